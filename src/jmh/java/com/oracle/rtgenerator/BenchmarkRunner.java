@@ -0,0 +1,19 @@
+package com.oracle.rtgenerator;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler always enabled so that every result reports the allocated bytes per
+ * operation next to the throughput. Accepts the usual JMH command line (e.g. a benchmark name regexp, -f, -wi, -i).
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
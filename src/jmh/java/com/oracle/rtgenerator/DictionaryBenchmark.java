@@ -0,0 +1,38 @@
+package com.oracle.rtgenerator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold startup cost of the dictionaries, each fork loading them once: precompiled binary files compared with the text
+ * resources parsed and formatted at runtime.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+@State(Scope.Thread)
+public class DictionaryBenchmark {
+
+	@Benchmark
+	public int precompiled() throws IOException {
+		int size = 0;
+		for (String name : DictionaryCompiler.NAMES) {
+			size += BinaryDictionary.load(DictionaryCompiler.resource(name)).size();
+		}
+		return size;
+	}
+
+	@Benchmark
+	public int text() throws IOException {
+		int size = 0;
+		for (List<String> values : DictionaryCompiler.compile(DictionaryCompiler.classPath()).values()) {
+			size += values.size();
+		}
+		return size;
+	}
+}
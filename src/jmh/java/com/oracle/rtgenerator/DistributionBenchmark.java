@@ -0,0 +1,39 @@
+package com.oracle.rtgenerator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skewed picks sampled from the alias tables, compared with the default distributions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DistributionBenchmark {
+	@Param({"default", "zipf:1", "pareto", "hotset:0.1:0.9"})
+	public String distribution;
+
+	private MyRandom random;
+
+	@Setup
+	public void setup() {
+		final Distribution skew = "default".equals(distribution) ? null : Distribution.parse(distribution);
+		MyRandom.setDistribution(MyRandom.Category.PRODUCTS, skew);
+		MyRandom.setDistribution(MyRandom.Category.CUSTOMERS, skew);
+		random = new MyRandom();
+	}
+
+	@Benchmark
+	public int randomProductIndex() {
+		return random.randomProductIndex();
+	}
+
+	@Benchmark
+	public int randomFirstNameIndex() {
+		return random.randomFirstNameIndex();
+	}
+}
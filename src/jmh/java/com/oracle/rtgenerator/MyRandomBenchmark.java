@@ -0,0 +1,80 @@
+package com.oracle.rtgenerator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The value pickers used for every generated purchase order.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MyRandomBenchmark {
+	private MyRandom random;
+	private MyRandom.City city;
+
+	@Setup
+	public void setup() {
+		random = new MyRandom();
+		city = random.randomCity();
+	}
+
+	@Benchmark
+	public String randomFirstName() {
+		return random.randomFirstName();
+	}
+
+	@Benchmark
+	public int randomLastNameIndex() {
+		return random.randomLastNameIndex();
+	}
+
+	@Benchmark
+	public MyRandom.City randomCity() {
+		return random.randomCity();
+	}
+
+	@Benchmark
+	public String randomStreet() {
+		return random.randomStreet();
+	}
+
+	@Benchmark
+	public String randomZipCode() {
+		return random.randomZipCode(city);
+	}
+
+	@Benchmark
+	public String randomCountry() {
+		return random.randomCountry();
+	}
+
+	@Benchmark
+	public String randomPhoneNumber() {
+		return random.randomPhoneNumber();
+	}
+
+	@Benchmark
+	public String randomCostCenter() {
+		return random.randomCostCenter();
+	}
+
+	@Benchmark
+	public String randomSpecialInstruction() {
+		return random.randomSpecialInstruction();
+	}
+
+	@Benchmark
+	public int nextGaussian() {
+		return random.nextGaussian(10d);
+	}
+
+	@Benchmark
+	public MyRandom.Product randomProduct() {
+		return random.randomProduct();
+	}
+}
@@ -0,0 +1,56 @@
+package com.oracle.rtgenerator;
+
+import oracle.sql.NUMBER;
+import oracle.sql.json.OracleJsonFactory;
+import oracle.sql.json.OracleJsonValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of the numeric values written into the documents (quantities, prices, coordinates, statistics).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumberBenchmark {
+	private final OracleJsonFactory factory = new OracleJsonFactory();
+
+	private int quantity = 3;
+	private double price = 19.95d;
+	private long code = 85391490524L;
+
+	@Benchmark
+	public NUMBER numberFromInt() {
+		return new NUMBER(quantity);
+	}
+
+	@Benchmark
+	public NUMBER numberFromLong() {
+		return new NUMBER(code);
+	}
+
+	@Benchmark
+	public NUMBER numberFromDouble() throws SQLException {
+		return new NUMBER(price);
+	}
+
+	@Benchmark
+	public OracleJsonValue valueFromIntNumber() {
+		return factory.createValue(new NUMBER(quantity));
+	}
+
+	@Benchmark
+	public OracleJsonValue valueFromDoubleNumber() throws SQLException {
+		return factory.createValue(new NUMBER(price));
+	}
+
+	@Benchmark
+	public OracleJsonValue decimalFromInt() {
+		return factory.createDecimal(quantity);
+	}
+}
@@ -0,0 +1,106 @@
+package com.oracle.rtgenerator;
+
+import oracle.sql.NUMBER;
+import oracle.sql.json.OracleJsonFactory;
+import oracle.sql.json.OracleJsonGenerator;
+import oracle.sql.json.OracleJsonValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OSON encoding alone: always the same purchase order, with every value prepared up front, written through
+ * {@link OracleJsonGenerator} into a reused buffer. The difference with {@link PurchaseOrderBenchmark} is the cost of
+ * picking the random values.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OsonEncodingBenchmark {
+	private final OracleJsonFactory factory = new OracleJsonFactory();
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	private OffsetDateTime requestedAt;
+	private MyRandom.City city;
+	private MyRandom.Product[] products;
+	private OracleJsonValue[] quantities;
+
+	@Setup
+	public void setup() throws SQLException {
+		final MyRandom random = new MyRandom();
+		requestedAt = OffsetDateTime.now(ZoneOffset.UTC);
+		city = random.randomCity();
+		products = new MyRandom.Product[]{random.randomProduct(), random.randomProduct(), random.randomProduct()};
+		quantities = new OracleJsonValue[products.length];
+		for (int i = 0; i < products.length; i++) {
+			quantities[i] = factory.createValue(new NUMBER(1 + i));
+		}
+	}
+
+	@Benchmark
+	public byte[] binary() {
+		out.reset();
+		write(factory.createJsonBinaryGenerator(out));
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] text() {
+		out.reset();
+		write(factory.createJsonTextGenerator(out));
+		return out.toByteArray();
+	}
+
+	private void write(OracleJsonGenerator gen) {
+		gen.writeStartObject();
+		gen.write("reference", "DKEZAR-20210101");
+		gen.write("requestor", "Docia Kezar");
+		gen.write("user", "DKEZAR");
+		gen.write("requestedAt", requestedAt);
+		gen.writeStartObject("shippingInstructions");
+		gen.write("name", "Docia Kezar");
+		gen.writeStartObject("address");
+		gen.write("street", "494 Vaile Ridge");
+		gen.write("city", city.name);
+		gen.write("state", city.state);
+		gen.write("zipCode", city.zipCodes[0]);
+		gen.write("country", "Malta");
+		gen.writeStartObject("geometry");
+		gen.write("type", "Point");
+		gen.writeStartArray("coordinates");
+		gen.write(city.longitude);
+		gen.write(city.latitude);
+		gen.writeEnd();
+		gen.writeEnd();
+		gen.writeEnd();
+		gen.writeStartArray("phone");
+		gen.writeStartObject();
+		gen.write("type", "Office");
+		gen.write("number", "(555) 555-0100");
+		gen.writeEnd();
+		gen.writeEnd();
+		gen.writeEnd();
+		gen.write("costCenter", "A30");
+		gen.write("specialInstructions", "Ground");
+		gen.write("allowPartialShipment", true);
+		gen.writeStartArray("items");
+		for (int i = 0; i < products.length; i++) {
+			gen.writeStartObject();
+			gen.write("description", products[i].name);
+			gen.write("unitPrice", products[i].price);
+			gen.write("UPCCode", products[i].code);
+			gen.write("quantity", quantities[i]);
+			gen.writeEnd();
+		}
+		gen.writeEnd();
+		gen.writeEnd();
+		gen.close();
+	}
+}
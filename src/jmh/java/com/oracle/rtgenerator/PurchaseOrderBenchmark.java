@@ -0,0 +1,50 @@
+package com.oracle.rtgenerator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end purchase order generation, as done by the insert threads when filling their cache or by the pipeline
+ * producers, and the unique documents patching.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PurchaseOrderBenchmark {
+	private PurchaseOrderBuilder builder;
+	private PurchaseOrderTemplate template;
+	private final double[] amount = new double[1];
+	private long sequence;
+
+	@Setup
+	public void setup() throws SQLException {
+		builder = new PurchaseOrderBuilder();
+		template = builder.generatePurchaseOrderTemplate();
+	}
+
+	@Benchmark
+	public byte[] generatePurchaseOrder() throws SQLException {
+		return builder.generatePurchaseOrder(amount, 0);
+	}
+
+	@Benchmark
+	public PurchaseOrderTemplate generatePurchaseOrderTemplate() throws SQLException {
+		return builder.generatePurchaseOrderTemplate();
+	}
+
+	@Benchmark
+	public PurchaseOrderTemplate patchTemplateInPlace() {
+		template.patch(sequence++, System.currentTimeMillis(), 0);
+		return template;
+	}
+
+	@Benchmark
+	public byte[] patchedTemplateCopy() {
+		return template.patchedCopy(sequence++, System.currentTimeMillis(), 0);
+	}
+}
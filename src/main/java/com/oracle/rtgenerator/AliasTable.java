@@ -0,0 +1,70 @@
+package com.oracle.rtgenerator;
+
+/**
+ * Vose's alias method: samples an index following arbitrary weights with one uniform index and one uniform double,
+ * whatever the number of values, and without allocating.
+ */
+final class AliasTable {
+	// chance to keep the drawn column rather than its alias
+	private final double[] probability;
+	private final int[] alias;
+
+	AliasTable(double[] weights) {
+		final int n = weights.length;
+		probability = new double[n];
+		alias = new int[n];
+
+		double sum = 0d;
+		for (double weight : weights) {
+			sum += weight;
+		}
+
+		// columns scaled to an average height of 1, split between the ones under and over it
+		final double[] scaled = new double[n];
+		final int[] small = new int[n];
+		final int[] large = new int[n];
+		int smalls = 0;
+		int larges = 0;
+		for (int i = 0; i < n; i++) {
+			scaled[i] = weights[i] * n / sum;
+			if (scaled[i] < 1d) {
+				small[smalls++] = i;
+			}
+			else {
+				large[larges++] = i;
+			}
+		}
+
+		// each small column is topped up by a large one
+		while (smalls > 0 && larges > 0) {
+			final int s = small[--smalls];
+			final int l = large[--larges];
+			probability[s] = scaled[s];
+			alias[s] = l;
+			scaled[l] = (scaled[l] + scaled[s]) - 1d;
+			if (scaled[l] < 1d) {
+				small[smalls++] = l;
+			}
+			else {
+				large[larges++] = l;
+			}
+		}
+
+		// left overs are full, up to rounding errors
+		while (larges > 0) {
+			probability[large[--larges]] = 1d;
+		}
+		while (smalls > 0) {
+			probability[small[--smalls]] = 1d;
+		}
+	}
+
+	int sample(MyRandom random) {
+		final int i = random.nextInt(probability.length);
+		return random.nextDouble() < probability[i] ? i : alias[i];
+	}
+
+	int size() {
+		return probability.length;
+	}
+}
@@ -0,0 +1,118 @@
+package com.oracle.rtgenerator;
+
+/**
+ * Batch size shared by the document sources. In adaptive mode, it is tuned once per displayer tick by hill climbing:
+ * the batch size keeps moving in the same direction (multiplied or divided by a constant step) as long as the
+ * throughput does not drop, and is halved whenever the p99 latency of a batch (insert + commit) exceeds the ceiling.
+ * <p>
+ * Measures are averaged over a few ticks and the tick following a change is ignored, since it still mixes batches of
+ * the previous size.
+ */
+public class BatchSizeController {
+	private static final int WINDOW_TICKS = 3;
+	private static final double STEP = 1.5d;
+	// throughput variations below this ratio are considered as noise
+	private static final double TOLERANCE = 0.03d;
+
+	private final boolean adaptive;
+	private final int minBatchSize;
+	private final int maxBatchSize;
+	private final long latencyCeilingMicros;
+
+	private volatile int batchSize;
+
+	// tuning state, only used by the thread calling update
+	private int direction = 1;
+	private boolean settling;
+	private int windowTicks;
+	private double windowDocumentsPerSecond;
+	private long windowLatencyMicros;
+	private double previousDocumentsPerSecond;
+
+	/**
+	 * Fixed batch size.
+	 */
+	public BatchSizeController(int batchSize) {
+		this(batchSize, batchSize, batchSize, 0L, false);
+	}
+
+	/**
+	 * @param latencyCeilingMicros p99 batch latency not to exceed (0: none)
+	 */
+	public BatchSizeController(int initialBatchSize, int minBatchSize, int maxBatchSize, long latencyCeilingMicros, boolean adaptive) {
+		this.batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.latencyCeilingMicros = latencyCeilingMicros;
+		this.adaptive = adaptive;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return the capacity batches must be allocated with
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Feeds the measures of the last tick.
+	 *
+	 * @param documentsPerSecond throughput of the last tick
+	 * @param latencyMicros      p99 latency of the batches completed during the last tick (-1 if none)
+	 */
+	public void update(double documentsPerSecond, long latencyMicros) {
+		if (!adaptive || latencyMicros < 0) {
+			// nothing measured yet (e.g. generators still starting)
+			return;
+		}
+		if (settling) {
+			settling = false;
+			return;
+		}
+
+		windowTicks++;
+		windowDocumentsPerSecond += documentsPerSecond;
+		windowLatencyMicros = Math.max(windowLatencyMicros, latencyMicros);
+		if (windowTicks < WINDOW_TICKS) {
+			return;
+		}
+
+		final double throughput = windowDocumentsPerSecond / windowTicks;
+		final int current = batchSize;
+		int next;
+
+		if (latencyCeilingMicros > 0 && windowLatencyMicros > latencyCeilingMicros) {
+			next = current / 2;
+			direction = -1;
+		}
+		else {
+			if (throughput < previousDocumentsPerSecond * (1d - TOLERANCE)) {
+				direction = -direction;
+			}
+			next = direction > 0 ? (int) Math.ceil(current * STEP) : (int) (current / STEP);
+		}
+		next = Math.max(minBatchSize, Math.min(maxBatchSize, next));
+
+		// reached a bound: explores the other direction next time
+		if (next == current) {
+			direction = -direction;
+		}
+		else {
+			batchSize = next;
+			settling = true;
+		}
+
+		previousDocumentsPerSecond = throughput;
+		windowTicks = 0;
+		windowDocumentsPerSecond = 0d;
+		windowLatencyMicros = 0L;
+	}
+}
@@ -0,0 +1,86 @@
+package com.oracle.rtgenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Strings precompiled at build time by {@link DictionaryCompiler}: a count, the offset of each string in a UTF-8 blob,
+ * then the blob. Read in bulk at startup, each string being decoded the first time it is picked, so that a run only
+ * pays for the names it actually writes.
+ */
+final class BinaryDictionary {
+	static final int MAGIC = 0x52544431; // RTD1
+	private static final int HEADER = 8;
+
+	private final byte[] data;
+	private final ByteBuffer index;
+	private final int blob;
+	// decoded strings, racy but idempotent
+	private final String[] strings;
+
+	private BinaryDictionary(byte[] data) {
+		this.data = data;
+		this.index = ByteBuffer.wrap(data);
+		if (data.length < HEADER || index.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Not a binary dictionary");
+		}
+		this.strings = new String[index.getInt(4)];
+		this.blob = HEADER + 4 * (strings.length + 1);
+	}
+
+	/**
+	 * @return the dictionary of the given class path resource, or null if not found
+	 */
+	static BinaryDictionary load(String resource) throws IOException {
+		try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource)) {
+			return in == null ? null : new BinaryDictionary(in.readAllBytes());
+		}
+	}
+
+	static BinaryDictionary of(List<String> values) {
+		return new BinaryDictionary(encode(values));
+	}
+
+	int size() {
+		return strings.length;
+	}
+
+	String get(int i) {
+		String value = strings[i];
+		if (value == null) {
+			final int start = index.getInt(HEADER + 4 * i);
+			value = new String(data, blob + start, index.getInt(HEADER + 4 * (i + 1)) - start, StandardCharsets.UTF_8);
+			strings[i] = value;
+		}
+		return value;
+	}
+
+	static byte[] encode(List<String> values) {
+		final ByteArrayOutputStream blob = new ByteArrayOutputStream(values.size() * 8);
+		final int[] offsets = new int[values.size() + 1];
+		for (int i = 0; i < values.size(); i++) {
+			final byte[] bytes = values.get(i).getBytes(StandardCharsets.UTF_8);
+			blob.write(bytes, 0, bytes.length);
+			offsets[i + 1] = blob.size();
+		}
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER + 4 * offsets.length + blob.size());
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeInt(values.size());
+			for (int offset : offsets) {
+				out.writeInt(offset);
+			}
+			blob.writeTo(out);
+		} catch (IOException e) {
+			// in memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,70 @@
+package com.oracle.rtgenerator;
+
+/**
+ * Replays the pre-generated documents of the pool shared by all the generator threads, each thread going through the
+ * pool with its own cursor and inserting the pooled documents themselves. In unique documents mode, the pool holds
+ * templates whose reference and requested at time are patched in the copy of each document. The threads start once
+ * the minimum working set of the pool is ready.
+ */
+public class CachedDocumentSource implements DocumentSource {
+	private static SharedDocumentPool POOL;
+	private static int MIN_READY;
+
+	private final int id;
+	private final boolean unique;
+	private final SharedDocumentPool.Cursor cursor;
+	private final DocumentBatch batch;
+
+	private long uniqueSequence;
+
+	public CachedDocumentSource(int id, BatchSizeController batchSizeController, boolean unique) throws Exception {
+		POOL.awaitReady(MIN_READY);
+		this.id = id;
+		this.unique = unique;
+		this.cursor = POOL.cursor(MyRandom.forStream(MyRandom.Stream.SESSION, id));
+		this.batch = new DocumentBatch(batchSizeController, POOL);
+	}
+
+	/**
+	 * Starts building the shared pool in the background, using all the VCPUs.
+	 *
+	 * @param minReady documents built before the threads start inserting
+	 * @return the pool being built
+	 */
+	public static SharedDocumentPool initialize(int size, int minReady, boolean unique, boolean json) {
+		POOL = SharedDocumentPool.start(size, Runtime.getRuntime().availableProcessors(), unique, json);
+		MIN_READY = Math.max(1, minReady);
+		return POOL;
+	}
+
+	@Override
+	public DocumentBatch next() {
+		while (!batch.isFull()) {
+			final int index = cursor.next();
+			if (unique) {
+				batch.add(nextUniqueDocument(index), POOL.getAmount(index));
+			}
+			else {
+				batch.add(POOL.get(index), POOL.getAmount(index), index);
+			}
+		}
+		return batch;
+	}
+
+	@Override
+	public void release(DocumentBatch batch) {
+		batch.clear();
+	}
+
+	/**
+	 * Turns a pooled template into a new document with a unique reference and a fresh requested at time.
+	 */
+	private byte[] nextUniqueDocument(int index) {
+		// the 4 leading digits of the reference sequence identify the thread across all the nodes
+		final long sequence = MyRandom.globalThreadId(id) * 1_000_000_000_000L + uniqueSequence++;
+		final long now = MyRandom.isDeterministic() ? PurchaseOrderBuilder.LOGICAL_EPOCH_MILLI + uniqueSequence : System.currentTimeMillis();
+		final int nanos = (int) (uniqueSequence % 1_000_000);
+
+		return POOL.copyPatched(index, sequence, now, nanos);
+	}
+}
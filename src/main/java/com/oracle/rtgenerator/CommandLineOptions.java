@@ -0,0 +1,64 @@
+package com.oracle.rtgenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the command line into the historical positional arguments and named <code>--option value</code> (or
+ * <code>--option=value</code>) arguments. A named option not followed by a value is a flag set to true.
+ */
+public class CommandLineOptions {
+	private final List<String> positional = new ArrayList<>();
+	private final Map<String, String> named = new HashMap<>();
+
+	public CommandLineOptions(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			final String arg = args[i];
+			if (arg.startsWith("--")) {
+				final int equal = arg.indexOf('=');
+				if (equal != -1) {
+					named.put(arg.substring(2, equal), arg.substring(equal + 1));
+				}
+				else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+					named.put(arg.substring(2), args[++i]);
+				}
+				else {
+					named.put(arg.substring(2), "true");
+				}
+			}
+			else {
+				positional.add(arg);
+			}
+		}
+	}
+
+	public String[] getPositional() {
+		return positional.toArray(new String[positional.size()]);
+	}
+
+	public boolean has(String name) {
+		return named.containsKey(name);
+	}
+
+	public String getString(String name, String defaultValue) {
+		return named.getOrDefault(name, defaultValue);
+	}
+
+	public int getInt(String name, int defaultValue) {
+		return named.containsKey(name) ? Integer.parseInt(named.get(name)) : defaultValue;
+	}
+
+	public long getLong(String name, long defaultValue) {
+		return named.containsKey(name) ? Long.parseLong(named.get(name)) : defaultValue;
+	}
+
+	public double getDouble(String name, double defaultValue) {
+		return named.containsKey(name) ? Double.parseDouble(named.get(name)) : defaultValue;
+	}
+
+	public boolean getBoolean(String name, boolean defaultValue) {
+		return named.containsKey(name) ? Boolean.parseBoolean(named.get(name)) : defaultValue;
+	}
+}
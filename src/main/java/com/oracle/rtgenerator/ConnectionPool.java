@@ -0,0 +1,184 @@
+package com.oracle.rtgenerator;
+
+import oracle.jdbc.internal.OracleConnection;
+import org.HdrHistogram.Histogram;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connections of the sessions, the readers and the statistics writer, each one keeping the connection it borrowed for
+ * its whole life. The backends differ by the pool in between (UCP, HikariCP) or its absence (a dedicated physical
+ * connection per borrower), and the time spent borrowing is measured the same way for all of them.
+ */
+public abstract class ConnectionPool implements AutoCloseable {
+
+	public enum Backend {
+		/**
+		 * Oracle Universal Connection Pool, validating the connections on borrow.
+		 */
+		UCP,
+		/**
+		 * HikariCP.
+		 */
+		HIKARI,
+		/**
+		 * No pool: a new physical connection for each borrower, pinned until it closes it.
+		 */
+		DEDICATED
+	}
+
+	// connection properties of all the backends
+	static final String ROW_PREFETCH = "20";
+	static final String STATEMENT_CACHE_SIZE = "20";
+
+	private final Backend backend;
+	private final int size;
+	private final LongAdder borrows = new LongAdder();
+	// borrows that failed or timed out
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicInteger waiting = new AtomicInteger();
+	// in microseconds, borrows are rare: one per session, reader or writer
+	private final Histogram borrowLatency = new Histogram(3);
+
+	protected ConnectionPool(Backend backend, int size) {
+		this.backend = backend;
+		this.size = size;
+	}
+
+	/**
+	 * @param url  JDBC URL of the database
+	 * @param size connections of the pool, ignored by the dedicated connections
+	 */
+	public static ConnectionPool create(Backend backend, String url, String user, String password, int size) throws SQLException {
+		switch (backend) {
+			case HIKARI:
+				return new HikariConnectionPool(url, user, password, size);
+
+			case DEDICATED:
+				return new DedicatedConnectionPool(url, user, password);
+
+			case UCP:
+			default:
+				return new UCPConnectionPool(url, user, password, size);
+		}
+	}
+
+	/**
+	 * @param name ucp, hikari or dedicated
+	 */
+	public static Backend parseBackend(String name) {
+		try {
+			return Backend.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown connection pool: " + name + " (ucp, hikari or dedicated)");
+		}
+	}
+
+	/**
+	 * Borrows a connection, to be given back by closing it. Only the successful borrows are counted as such and
+	 * recorded in the latencies, the time waited counts in any case.
+	 */
+	public final Connection getConnection() throws SQLException {
+		waiting.incrementAndGet();
+		final long start = System.nanoTime();
+		boolean borrowed = false;
+		try {
+			final Connection c = borrow();
+			borrowed = true;
+			return c;
+		} finally {
+			final long elapsed = System.nanoTime() - start;
+			waiting.decrementAndGet();
+			waitNanos.add(elapsed);
+			if (borrowed) {
+				borrows.increment();
+				synchronized (borrowLatency) {
+					borrowLatency.recordValue(elapsed / 1000L);
+				}
+			}
+			else {
+				failures.increment();
+			}
+		}
+	}
+
+	protected abstract Connection borrow() throws SQLException;
+
+	public Backend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * @return connections of the pool, 0 for the dedicated connections
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public long getBorrows() {
+		return borrows.sum();
+	}
+
+	/**
+	 * @return borrows that failed or timed out
+	 */
+	public long getBorrowFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * @return threads waiting for a connection
+	 */
+	public int getWaitingThreads() {
+		return waiting.get();
+	}
+
+	/**
+	 * @return total time spent by the threads waiting for a connection
+	 */
+	public double getWaitMillis() {
+		return waitNanos.sum() / 1_000_000d;
+	}
+
+	/**
+	 * @return a copy of the latencies of all the successful borrows so far, in microseconds
+	 */
+	public Histogram getBorrowLatency() {
+		synchronized (borrowLatency) {
+			return borrowLatency.copy();
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public String toString() {
+		return backend == Backend.DEDICATED ? "dedicated" : backend.name().toLowerCase(Locale.ROOT) + ", " + size + " connections";
+	}
+
+	/**
+	 * @return the connection properties common to all the backends
+	 */
+	static Properties connectionProperties() {
+		final Properties properties = new Properties();
+		properties.setProperty(OracleConnection.CONNECTION_PROPERTY_DEFAULT_ROW_PREFETCH, ROW_PREFETCH);
+		properties.setProperty(OracleConnection.CONNECTION_PROPERTY_IMPLICIT_STATEMENT_CACHE_SIZE, STATEMENT_CACHE_SIZE);
+		return properties;
+	}
+
+	/**
+	 * @return the Oracle connection of a borrowed one, the connection itself unless its pool wraps it in a proxy
+	 * hiding the Oracle extensions (HikariCP)
+	 */
+	static OracleConnection oracleConnection(Connection c) throws SQLException {
+		return c instanceof OracleConnection ? (OracleConnection) c : c.unwrap(OracleConnection.class);
+	}
+}
@@ -0,0 +1,29 @@
+package com.oracle.rtgenerator;
+
+import oracle.jdbc.pool.OracleDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * No pool at all: every borrower opens its own physical connection, pinned until it closes it. The borrow latency is
+ * then the time to establish a session.
+ */
+public class DedicatedConnectionPool extends ConnectionPool {
+	private final OracleDataSource dataSource;
+
+	public DedicatedConnectionPool(String url, String user, String password) throws SQLException {
+		super(Backend.DEDICATED, 0);
+
+		dataSource = new OracleDataSource();
+		dataSource.setURL(url);
+		dataSource.setUser(user);
+		dataSource.setPassword(password);
+		dataSource.setConnectionProperties(connectionProperties());
+	}
+
+	@Override
+	protected Connection borrow() throws SQLException {
+		return dataSource.getConnection();
+	}
+}
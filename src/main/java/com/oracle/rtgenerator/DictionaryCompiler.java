@@ -0,0 +1,159 @@
+package com.oracle.rtgenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Build step turning the text resources (names, movies) into the {@link BinaryDictionary} files loaded by
+ * {@link MyRandom}, with the values already formatted: capitalized names, user suffixes, and the preformatted
+ * street and phone number tables. Run by Maven after the compilation:
+ * <pre>
+ * java com.oracle.rtgenerator.DictionaryCompiler src/main/resources target/classes/dictionaries
+ * </pre>
+ * Also used at runtime, in memory, when the precompiled dictionaries are missing from the class path.
+ */
+public final class DictionaryCompiler {
+	static final String FIRST_NAMES = "first_names";
+	static final String LAST_NAMES = "last_names";
+	static final String USER_SUFFIXES = "user_suffixes";
+	static final String STREETS = "streets";
+	static final String PHONE_NUMBERS = "phone_numbers";
+	static final String CELL_PHONES = "cell_phones";
+	static final String PRODUCTS = "products";
+	static final String[] NAMES = {FIRST_NAMES, LAST_NAMES, USER_SUFFIXES, STREETS, PHONE_NUMBERS, CELL_PHONES, PRODUCTS};
+
+	private static final String[] STREET_SUFFIXES = {"Street", "Avenue", "Road", "Drive", "Lane", "Boulevard", "Way", "Court", "Place", "Terrace", "Parkway", "Circle", "Trail", "Square", "Crossing", "Ridge"};
+
+	/**
+	 * Source of the text resources.
+	 */
+	interface Resources {
+		InputStream open(String fileName) throws IOException;
+	}
+
+	private DictionaryCompiler() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: DictionaryCompiler <text resources directory> <output directory>");
+			System.exit(1);
+		}
+
+		final long start = System.nanoTime();
+		final File source = new File(args[0]);
+		final File target = new File(args[1]);
+		if (!target.isDirectory() && !target.mkdirs()) {
+			throw new IOException("Can't create " + target);
+		}
+
+		long bytes = 0;
+		for (Map.Entry<String, List<String>> dictionary : compile(fileName -> new FileInputStream(new File(source, fileName))).entrySet()) {
+			final byte[] data = BinaryDictionary.encode(dictionary.getValue());
+			try (OutputStream out = new FileOutputStream(new File(target, fileName(dictionary.getKey())))) {
+				out.write(data);
+			}
+			bytes += data.length;
+		}
+		System.out.printf(Locale.US, "Compiled %d dictionaries (%,d bytes) into %s in %d ms%n", NAMES.length, bytes, target, (System.nanoTime() - start) / 1_000_000);
+	}
+
+	/**
+	 * @return the class path resource of a precompiled dictionary
+	 */
+	static String resource(String name) {
+		return "dictionaries/" + fileName(name);
+	}
+
+	private static String fileName(String name) {
+		return name + ".dict";
+	}
+
+	/**
+	 * @return the class path text resources
+	 */
+	static Resources classPath() {
+		return fileName -> {
+			final InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(fileName);
+			if (in == null) {
+				throw new IOException("Resource not found: " + fileName);
+			}
+			return in;
+		};
+	}
+
+	/**
+	 * @return the values of each dictionary, by name, as written to the binary files
+	 */
+	static Map<String, List<String>> compile(Resources resources) throws IOException {
+		final Map<String, List<String>> d = new LinkedHashMap<>();
+		d.put(FIRST_NAMES, capitalize(lines(resources, "first_names.txt")));
+		d.put(LAST_NAMES, capitalize(lines(resources, "last_names.txt")));
+		d.put(USER_SUFFIXES, userSuffixes(d.get(LAST_NAMES)));
+
+		// the preformatted tables are always built the same way, whatever the run
+		final SplittableRandom tablesRandom = new SplittableRandom(0x5EED);
+		d.put(STREETS, streets(tablesRandom, d.get(LAST_NAMES)));
+		d.put(PHONE_NUMBERS, phoneNumbers(tablesRandom, "(%03d) %03d-%04d"));
+		d.put(CELL_PHONES, phoneNumbers(tablesRandom, "%03d-%03d-%04d"));
+
+		// name;price;upc code, parsed when first picked
+		d.put(PRODUCTS, lines(resources, "movies.csv"));
+		return d;
+	}
+
+	private static List<String> lines(Resources resources, String fileName) throws IOException {
+		final List<String> d = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(resources.open(fileName), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				d.add(line);
+			}
+		} catch (IOException e) {
+			throw new IOException("Cannot read the dictionary " + fileName + ": " + e.getMessage(), e);
+		}
+		return d;
+	}
+
+	private static List<String> capitalize(List<String> names) {
+		names.replaceAll(name -> name.substring(0, 1).toUpperCase(Locale.ROOT) + name.substring(1));
+		return names;
+	}
+
+	private static List<String> userSuffixes(List<String> lastNames) {
+		final List<String> d = new ArrayList<>(lastNames.size());
+		for (String lastName : lastNames) {
+			d.add(lastName.substring(0, Math.min(lastName.length(), 8)).toUpperCase(Locale.ROOT));
+		}
+		return d;
+	}
+
+	private static List<String> streets(SplittableRandom random, List<String> lastNames) {
+		final List<String> d = new ArrayList<>(MyRandom.STREETS);
+		for (int i = 0; i < MyRandom.STREETS; i++) {
+			d.add((1 + random.nextInt(random.nextBoolean() ? 999 : 9999)) + " " + lastNames.get(random.nextInt(lastNames.size())) + " " + STREET_SUFFIXES[random.nextInt(STREET_SUFFIXES.length)]);
+		}
+		return d;
+	}
+
+	private static List<String> phoneNumbers(SplittableRandom random, String format) {
+		final List<String> d = new ArrayList<>(MyRandom.PHONE_NUMBERS);
+		for (int i = 0; i < MyRandom.PHONE_NUMBERS; i++) {
+			d.add(String.format(Locale.ROOT, format, 201 + random.nextInt(789), 200 + random.nextInt(800), random.nextInt(10000)));
+		}
+		return d;
+	}
+}
@@ -0,0 +1,167 @@
+package com.oracle.rtgenerator;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Skew of the random picks among the values of a category (products, customers...), given as
+ * <code>uniform</code>, <code>zipf[:s]</code>, <code>pareto[:alpha]</code> or <code>hotset[:fraction:share]</code>.
+ * The weights of the values are computed once into an {@link AliasTable}, so that a pick stays constant time.
+ */
+public class Distribution {
+
+	public enum Kind {
+		/**
+		 * All the values equally likely.
+		 */
+		UNIFORM,
+		/**
+		 * Value of rank k picked in proportion to 1/k^s (s: 1*).
+		 */
+		ZIPF,
+		/**
+		 * Top fraction p of the values getting a share p^(1-1/alpha) of the picks, 80/20 for alpha 1.16*.
+		 */
+		PARETO,
+		/**
+		 * A fraction of the values (0.2*) getting a share of the picks (0.8*), all the values of each set equally
+		 * likely.
+		 */
+		HOTSET
+	}
+
+	// the hot values are spread over the dictionaries (sorted by name) the same way in every run and on every node
+	private static final long PERMUTATION_SEED = 0x5EEDL;
+
+	private final Kind kind;
+	private final double first;
+	private final double second;
+
+	public Distribution(Kind kind, double first, double second) {
+		this.kind = kind;
+		this.first = first;
+		this.second = second;
+
+		switch (kind) {
+			case ZIPF:
+				if (first <= 0d) {
+					throw new IllegalArgumentException("Zipf exponent must be positive");
+				}
+				break;
+			case PARETO:
+				if (first <= 1d) {
+					throw new IllegalArgumentException("Pareto shape must be greater than 1");
+				}
+				break;
+			case HOTSET:
+				if (first <= 0d || first >= 1d || second <= 0d || second >= 1d) {
+					throw new IllegalArgumentException("Hot set fraction and share must be between 0 and 1 (excluded)");
+				}
+				break;
+			default:
+		}
+	}
+
+	/**
+	 * @param spec e.g. zipf:1.2, pareto, hotset:0.01:0.5
+	 */
+	public static Distribution parse(String spec) {
+		final String[] items = spec.trim().split(":");
+		final Kind kind;
+		try {
+			kind = Kind.valueOf(items[0].toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown distribution: " + spec + " (uniform, zipf[:s], pareto[:alpha] or hotset[:fraction:share])");
+		}
+
+		switch (kind) {
+			case ZIPF:
+				return new Distribution(kind, items.length > 1 ? Double.parseDouble(items[1]) : 1d, 0d);
+			case PARETO:
+				return new Distribution(kind, items.length > 1 ? Double.parseDouble(items[1]) : 1.16d, 0d);
+			case HOTSET:
+				return new Distribution(kind, items.length > 1 ? Double.parseDouble(items[1]) : 0.2d, items.length > 2 ? Double.parseDouble(items[2]) : 0.8d);
+			default:
+				return new Distribution(kind, 0d, 0d);
+		}
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the weight of the value of each rank, the first one being the most likely
+	 */
+	double[] weights(int n) {
+		final double[] weights = new double[n];
+		switch (kind) {
+			case ZIPF:
+				for (int k = 0; k < n; k++) {
+					weights[k] = 1d / Math.pow(k + 1, first);
+				}
+				break;
+
+			case PARETO: {
+				// share of the picks going to the top k/n values, from the Lorenz curve of the Pareto distribution
+				final double exponent = 1d - 1d / first;
+				double previous = 0d;
+				for (int k = 0; k < n; k++) {
+					final double cumulated = Math.pow((k + 1) / (double) n, exponent);
+					weights[k] = cumulated - previous;
+					previous = cumulated;
+				}
+				break;
+			}
+
+			case HOTSET: {
+				final int hot = Math.max(1, Math.min(n, (int) Math.round(first * n)));
+				for (int k = 0; k < n; k++) {
+					weights[k] = hot == n ? 1d : k < hot ? second / hot : (1d - second) / (n - hot);
+				}
+				break;
+			}
+
+			case UNIFORM:
+			default:
+				Arrays.fill(weights, 1d);
+		}
+		return weights;
+	}
+
+	/**
+	 * @return the alias table picking among n values, their ranks shuffled by a fixed permutation, or null if uniform
+	 */
+	AliasTable table(int n) {
+		if (kind == Kind.UNIFORM) {
+			return null;
+		}
+
+		final double[] weights = weights(n);
+		final SplittableRandom random = new SplittableRandom(PERMUTATION_SEED);
+		for (int i = n - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final double weight = weights[i];
+			weights[i] = weights[j];
+			weights[j] = weight;
+		}
+		return new AliasTable(weights);
+	}
+
+	/**
+	 * @return the specification of the distribution, as parsed
+	 */
+	@Override
+	public String toString() {
+		switch (kind) {
+			case ZIPF:
+			case PARETO:
+				return kind.name().toLowerCase(Locale.ROOT) + ":" + first;
+			case HOTSET:
+				return "hotset:" + first + ":" + second;
+			default:
+				return "uniform";
+		}
+	}
+}
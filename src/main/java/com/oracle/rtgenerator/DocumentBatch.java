@@ -0,0 +1,98 @@
+package com.oracle.rtgenerator;
+
+import java.util.Arrays;
+
+/**
+ * A batch of ready to insert OSON documents together with the accounting the generators report in their metrics.
+ */
+public class DocumentBatch {
+	// sized for the batch size in use when created, grown if the adaptive batch size increases
+	byte[][] documents;
+	double[] amounts;
+	// position of each document in the shared pool it comes from, -1 if not a pooled one
+	int[] poolIndexes;
+	final SharedDocumentPool pool;
+	private final int capacity;
+	private final BatchSizeController batchSizeController;
+	int size;
+	long bytes;
+	double salesPrice;
+
+	public DocumentBatch(int capacity) {
+		this.documents = new byte[capacity][];
+		this.amounts = new double[capacity];
+		this.poolIndexes = new int[capacity];
+		this.pool = null;
+		this.capacity = capacity;
+		this.batchSizeController = null;
+	}
+
+	/**
+	 * A batch full once it reaches the batch size currently in use.
+	 */
+	public DocumentBatch(BatchSizeController batchSizeController) {
+		this(batchSizeController, null);
+	}
+
+	/**
+	 * @param pool shared pool the documents are taken from
+	 */
+	public DocumentBatch(BatchSizeController batchSizeController, SharedDocumentPool pool) {
+		this.documents = new byte[batchSizeController.getBatchSize()][];
+		this.amounts = new double[documents.length];
+		this.poolIndexes = new int[documents.length];
+		this.pool = pool;
+		this.capacity = batchSizeController.getMaxBatchSize();
+		this.batchSizeController = batchSizeController;
+	}
+
+	public void add(byte[] document, double amount) {
+		add(document, amount, -1);
+	}
+
+	/**
+	 * @param poolIndex position of the document in the shared pool of this batch
+	 */
+	public void add(byte[] document, double amount, int poolIndex) {
+		if (size == documents.length) {
+			final int length = (int) Math.min(capacity, Math.max(16L, 2L * documents.length));
+			documents = Arrays.copyOf(documents, length);
+			amounts = Arrays.copyOf(amounts, length);
+			poolIndexes = Arrays.copyOf(poolIndexes, length);
+		}
+		poolIndexes[size] = poolIndex;
+		amounts[size] = amount;
+		documents[size++] = document;
+		bytes += document.length;
+		salesPrice += amount;
+	}
+
+	/**
+	 * Keeps only the first documents, the batch is no more full.
+	 */
+	public void truncate(int newSize) {
+		for (int i = newSize; i < size; i++) {
+			bytes -= documents[i].length;
+			salesPrice -= amounts[i];
+			documents[i] = null;
+		}
+		size = newSize;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			documents[i] = null;
+		}
+		size = 0;
+		bytes = 0;
+		salesPrice = 0d;
+	}
+
+	public boolean isFull() {
+		return size >= (batchSizeController == null ? capacity : batchSizeController.getBatchSize());
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,26 @@
+package com.oracle.rtgenerator;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Where the generator threads write their batches of documents to. One instance is used by a single generator thread.
+ */
+public interface DocumentSink extends AutoCloseable {
+	void insert(DocumentBatch batch) throws Exception;
+
+	void commit() throws Exception;
+
+	/**
+	 * Applies the updates to documents inserted earlier, to be committed by {@link #commit()}.
+	 *
+	 * @return documents actually updated
+	 */
+	int update(UpdateBatch batch) throws Exception;
+
+	/**
+	 * Releases the connection or the file, without the InterruptedException of {@link AutoCloseable#close()}.
+	 */
+	@Override
+	void close() throws IOException, SQLException;
+}
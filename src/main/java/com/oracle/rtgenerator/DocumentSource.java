@@ -0,0 +1,16 @@
+package com.oracle.rtgenerator;
+
+/**
+ * Where the generator threads get their batches of OSON documents from.
+ */
+public interface DocumentSource {
+	/**
+	 * @return the next batch to insert or null once the source is exhausted
+	 */
+	DocumentBatch next() throws Exception;
+
+	/**
+	 * Gives back a batch returned by {@link #next()} once its documents have been handed over to the target.
+	 */
+	void release(DocumentBatch batch);
+}
@@ -0,0 +1,1143 @@
+package com.oracle.rtgenerator;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import oracle.sql.NUMBER;
+import oracle.sql.json.OracleJsonFactory;
+import oracle.sql.json.OracleJsonGenerator;
+import oracle.sql.json.OracleJsonValue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Shape of the generated documents, declared as JSON and compiled once into a flat program writing straight to an
+ * {@link OracleJsonGenerator}: no tree is walked and no intermediate value is boxed while generating.
+ * <p>
+ * In a template, strings, numbers, booleans and null are written as is, and objects and arrays are nested, except
+ * objects holding one of these generators:
+ * <ul>
+ * <li><code>{"$pick": "cities"}</code> a random row of a dictionary (built-in, declared under
+ * <code>$dictionaries</code> or inline as an array), <code>{"$pick": "city.zipCodes"}</code> a random value of a list
+ * column of a row already picked</li>
+ * <li><code>{"$item": "phoneTypes"}</code> the row of the current array element index</li>
+ * <li><code>{"$int": [1, 5]}</code>, <code>{"$double": [0, 100]}</code>, <code>{"$gaussian": 10}</code>,
+ * <code>{"$boolean": true}</code> random numbers, the bounds of $int included, the upper bound of $double
+ * excluded</li>
+ * <li><code>{"$now": true}</code> a timestamp, <code>{"$sequence": true}</code> the document number,
+ * <code>{"$index": true}</code> the current array element index</li>
+ * <li><code>{"$var": "city.state", "first": 1}</code> a value bound before, or a column of a row</li>
+ * <li><code>{"$concat": ["-", {"$var": "user"}]}</code> a string, <code>{"$date": "now"}</code> the yyyyMMdd of a
+ * timestamp, <code>{"$uniqueSuffix": true}</code> <code>-node.stream.index.sequence</code>, so that no two
+ * documents of a run share it across nodes and threads, or the unique sequence in unique documents mode</li>
+ * <li><code>{"$when": {...}, "is": 2, "then": ..., "else": ...}</code> a value depending on a number, the field is
+ * omitted without a matching branch</li>
+ * <li><code>{"$array": {"$int": [0, 3]}, "of": ..., "omitEmpty": true}</code> an array of random cardinality</li>
+ * </ul>
+ * Any generator can bind its value with <code>"as": "name"</code>, and an object can bind values first with
+ * <code>"$let": {"name": generator, ...}</code>. <code>"$amount"</code> (a number or <code>{"$multiply": [...]}</code>)
+ * adds to the sales price reported by the metrics.
+ * <p>
+ * The compiled program is immutable and shared by all the threads, each one running it with its own {@link State}.
+ */
+public final class DocumentTemplate {
+	/**
+	 * Resource of the built-in purchase order template.
+	 */
+	public static final String PURCHASE_ORDER = "templates/purchase_order.json";
+
+	private static final String UNIQUE_SUFFIX = "-" + PurchaseOrderTemplate.PLACEHOLDER_SEQUENCE;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+	// instructions
+	private static final int START_OBJECT = 0;
+	private static final int START_ARRAY = 1;
+	private static final int END = 2;
+	private static final int ARRAY = 3;
+	private static final int NEXT = 4;
+	private static final int BRANCH = 5;
+	private static final int JUMP = 6;
+	private static final int WRITE_NULL = 7;
+	private static final int WRITE_TEXT = 8;
+	private static final int WRITE_CONSTANT = 9;
+	private static final int WRITE_STRING = 10;
+	private static final int WRITE_LONG = 11;
+	private static final int WRITE_DOUBLE = 12;
+	private static final int WRITE_BOOLEAN = 13;
+	private static final int WRITE_INSTANT = 14;
+	private static final int WRITE_STRING_COLUMN = 15;
+	private static final int WRITE_VALUE_COLUMN = 16;
+	private static final int SET = 17;
+	private static final int INT = 18;
+	private static final int DOUBLE = 19;
+	private static final int GAUSSIAN = 20;
+	private static final int BOOLEAN = 21;
+	private static final int NOW = 22;
+	private static final int SEQUENCE = 23;
+	private static final int PICK = 24;
+	private static final int PICK_LIST = 25;
+	private static final int ITEM = 26;
+	private static final int CONCAT = 27;
+	private static final int AMOUNT = 28;
+	private static final int WRITE_LAZY_COLUMN = 29;
+
+	private final String name;
+	// one entry per instruction: opcode, field name (null inside arrays), register or jump operands
+	private final int[] codes;
+	private final String[] keys;
+	private final int[] a;
+	private final int[] b;
+	private final int[] c;
+	private final long[] values;
+	private final Object[] operands;
+	// registers of the states running the program
+	private final int refs;
+	private final int longs;
+	private final int doubles;
+	private final int dates;
+	private final boolean uniqueDocuments;
+
+	private DocumentTemplate(String name, Compiler compiler) {
+		this.name = name;
+		final int size = compiler.program.size();
+		codes = new int[size];
+		keys = new String[size];
+		a = new int[size];
+		b = new int[size];
+		c = new int[size];
+		values = new long[size];
+		operands = new Object[size];
+		for (int i = 0; i < size; i++) {
+			final Instruction instruction = compiler.program.get(i);
+			codes[i] = instruction.code;
+			keys[i] = instruction.key;
+			a[i] = instruction.a;
+			b[i] = instruction.b;
+			c[i] = instruction.c;
+			values[i] = instruction.value;
+			operands[i] = instruction.operand;
+		}
+		refs = compiler.refs;
+		longs = compiler.longs;
+		doubles = compiler.doubles;
+		dates = compiler.dates;
+		uniqueDocuments = compiler.now && compiler.date && compiler.uniqueSuffix;
+	}
+
+	/**
+	 * @return the purchase order template
+	 */
+	public static DocumentTemplate purchaseOrder() {
+		try {
+			return load(PURCHASE_ORDER);
+		} catch (IOException | SQLException e) {
+			throw new IllegalStateException("Built-in purchase order template not loaded", e);
+		}
+	}
+
+	/**
+	 * @param path template file, or resource of the class path
+	 */
+	public static DocumentTemplate load(String path) throws IOException, SQLException {
+		final File file = new File(path);
+		try (InputStream in = open(file, path)) {
+			return compile(file.getName(), MAPPER.readTree(in), file.getAbsoluteFile().getParentFile());
+		}
+	}
+
+	private static InputStream open(File file, String path) throws IOException {
+		if (file.isFile()) {
+			return new FileInputStream(file);
+		}
+		final InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
+		if (in == null) {
+			throw new IOException("Template not found: " + path);
+		}
+		return in;
+	}
+
+	/**
+	 * @param directory where the dictionary files of the template are, before the class path
+	 */
+	static DocumentTemplate compile(String name, JsonNode root, File directory) throws IOException, SQLException {
+		if (root == null || !root.isObject()) {
+			throw new IllegalArgumentException("Template " + name + " must be a JSON object");
+		}
+
+		final Compiler compiler = new Compiler(name);
+		final JsonNode declared = root.get("$dictionaries");
+		if (declared != null) {
+			for (Iterator<Map.Entry<String, JsonNode>> it = declared.fields(); it.hasNext(); ) {
+				final Map.Entry<String, JsonNode> entry = it.next();
+				final TemplateDictionary dictionary = entry.getValue().isTextual() ?
+						TemplateDictionary.of(entry.getKey(), readLines(directory, entry.getValue().asText()))
+						: TemplateDictionary.of(entry.getKey(), entry.getValue());
+				compiler.dictionaries.put(entry.getKey(), dictionary);
+			}
+		}
+
+		compiler.object(null, root, new Scope(null, -1), "$");
+		return new DocumentTemplate(name, compiler);
+	}
+
+	private static List<String> readLines(File directory, String path) throws IOException {
+		final File file = new File(directory, path);
+		final List<String> lines = new ArrayList<>();
+		try (InputStream in = open(file.isFile() ? file : new File(path), path)) {
+			for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\r?\n")) {
+				if (!line.isEmpty()) {
+					lines.add(line);
+				}
+			}
+		}
+		return lines;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true if the documents can be patched by {@link PurchaseOrderTemplate}: the template writes a $now
+	 * timestamp and a string ending with its $date and a $uniqueSuffix
+	 */
+	public boolean supportsUniqueDocuments() {
+		return uniqueDocuments;
+	}
+
+	/**
+	 * @param random        random values of the stream the state generates
+	 * @param firstSequence sequence of the first document, also its logical time in deterministic mode
+	 */
+	public State newState(MyRandom random, long firstSequence) {
+		return new State(this, random, firstSequence);
+	}
+
+	/**
+	 * Registers of one thread running the program. Not thread safe.
+	 */
+	public static final class State {
+		private final MyRandom random;
+		private final OracleJsonFactory factory = new OracleJsonFactory();
+		private final Object[] refs;
+		private final long[] longs;
+		private final double[] doubles;
+		// yyyyMMdd of each $date, only formatted again when the day changes
+		private final long[] dateDays;
+		private final String[] dates;
+		private final boolean logicalTime = MyRandom.isDeterministic();
+		// -node.stream.index. of the $uniqueSuffix, followed by the document sequence
+		private final String origin;
+		private long sequence;
+
+		private State(DocumentTemplate template, MyRandom random, long firstSequence) {
+			this.random = random;
+			this.refs = new Object[template.refs];
+			this.longs = new long[template.longs];
+			this.doubles = new double[template.doubles];
+			this.dateDays = new long[template.dates];
+			this.dates = new String[template.dates];
+			Arrays.fill(dateDays, Long.MIN_VALUE);
+			this.sequence = firstSequence;
+			this.origin = "-" + MyRandom.NODE_ID + "." + (random.getStream() == null ? "" : random.getStream().ordinal() + "." + random.getStreamIndex() + ".");
+		}
+
+		private String date(int index, Instant instant) {
+			final long epochDay = Math.floorDiv(instant.getEpochSecond(), 86400L);
+			if (epochDay != dateDays[index]) {
+				final LocalDate date = LocalDate.ofEpochDay(epochDay);
+				final char[] digits = new char[8];
+				writeDigits(digits, 0, 4, date.getYear());
+				writeDigits(digits, 4, 2, date.getMonthValue());
+				writeDigits(digits, 6, 2, date.getDayOfMonth());
+				dates[index] = new String(digits);
+				dateDays[index] = epochDay;
+			}
+			return dates[index];
+		}
+
+		private static void writeDigits(char[] target, int offset, int length, int value) {
+			for (int i = offset + length - 1; i >= offset; i--, value /= 10) {
+				target[i] = (char) ('0' + value % 10);
+			}
+		}
+	}
+
+	/**
+	 * Generates one document.
+	 *
+	 * @param placeholders writes the placeholders of {@link PurchaseOrderTemplate} instead of the current time and
+	 *                     sequence
+	 * @return the amount of the document
+	 */
+	public double write(State state, OracleJsonGenerator gen, boolean placeholders) throws SQLException {
+		final MyRandom random = state.random;
+		final Object[] refs = state.refs;
+		final long[] longs = state.longs;
+		final double[] doubles = state.doubles;
+		final long sequence = state.sequence++;
+		double amount = 0d;
+
+		// locals let the JIT keep the program in registers
+		final int[] codes = this.codes;
+		final String[] keys = this.keys;
+		final int[] a = this.a;
+		final int[] b = this.b;
+		final int[] c = this.c;
+		final long[] values = this.values;
+		final Object[] operands = this.operands;
+
+		int pc = 0;
+		while (pc < codes.length) {
+			final String key = keys[pc];
+			int next = pc + 1;
+
+			switch (codes[pc]) {
+				case START_OBJECT:
+					if (key == null) gen.writeStartObject(); else gen.writeStartObject(key);
+					break;
+
+				case START_ARRAY:
+					if (key == null) gen.writeStartArray(); else gen.writeStartArray(key);
+					break;
+
+				case END:
+					gen.writeEnd();
+					break;
+
+				case ARRAY:
+					if (longs[a[pc]] <= 0L) {
+						if (values[pc] != 0L) {
+							// omitted: skips the element and the end of the array
+							next = c[pc] + 1;
+							break;
+						}
+						next = c[pc];
+					}
+					longs[b[pc]] = 0L;
+					if (key == null) gen.writeStartArray(); else gen.writeStartArray(key);
+					break;
+
+				case NEXT:
+					if (++longs[b[pc]] < longs[a[pc]]) {
+						next = c[pc];
+					}
+					break;
+
+				case BRANCH:
+					if (longs[a[pc]] != values[pc]) {
+						next = c[pc];
+					}
+					break;
+
+				case JUMP:
+					next = c[pc];
+					break;
+
+				case WRITE_NULL:
+					if (key == null) gen.writeNull(); else gen.writeNull(key);
+					break;
+
+				case WRITE_TEXT:
+					if (key == null) gen.write((String) operands[pc]); else gen.write(key, (String) operands[pc]);
+					break;
+
+				case WRITE_CONSTANT:
+					if (key == null) gen.write((OracleJsonValue) operands[pc]); else gen.write(key, (OracleJsonValue) operands[pc]);
+					break;
+
+				case WRITE_STRING:
+					if (key == null) gen.write((String) refs[a[pc]]); else gen.write(key, (String) refs[a[pc]]);
+					break;
+
+				case WRITE_LONG: {
+					final OracleJsonValue value = state.factory.createValue(new NUMBER(longs[a[pc]]));
+					if (key == null) gen.write(value); else gen.write(key, value);
+					break;
+				}
+
+				case WRITE_DOUBLE: {
+					final OracleJsonValue value = state.factory.createValue(new NUMBER(doubles[a[pc]]));
+					if (key == null) gen.write(value); else gen.write(key, value);
+					break;
+				}
+
+				case WRITE_BOOLEAN:
+					if (key == null) gen.write(longs[a[pc]] != 0L); else gen.write(key, longs[a[pc]] != 0L);
+					break;
+
+				case WRITE_INSTANT:
+					if (key == null) gen.write(((Instant) refs[a[pc]]).atOffset(ZoneOffset.UTC));
+					else gen.write(key, ((Instant) refs[a[pc]]).atOffset(ZoneOffset.UTC));
+					break;
+
+				case WRITE_STRING_COLUMN: {
+					final String value = ((String[]) operands[pc])[(int) longs[a[pc]]];
+					if (key == null) gen.write(value); else gen.write(key, value);
+					break;
+				}
+
+				case WRITE_VALUE_COLUMN: {
+					final OracleJsonValue value = ((OracleJsonValue[]) operands[pc])[(int) longs[a[pc]]];
+					if (key == null) gen.write(value); else gen.write(key, value);
+					break;
+				}
+
+				case WRITE_LAZY_COLUMN: {
+					final Object value = ((TemplateDictionary.LazyColumn) operands[pc]).get((int) longs[a[pc]]);
+					if (value instanceof String) {
+						if (key == null) gen.write((String) value); else gen.write(key, (String) value);
+					}
+					else {
+						if (key == null) gen.write((OracleJsonValue) value); else gen.write(key, (OracleJsonValue) value);
+					}
+					break;
+				}
+
+				case SET:
+					longs[a[pc]] = values[pc];
+					break;
+
+				case INT:
+					longs[a[pc]] = values[pc] + random.nextInt(b[pc]);
+					break;
+
+				case DOUBLE: {
+					final double[] bounds = (double[]) operands[pc];
+					doubles[a[pc]] = bounds[0] + random.nextDouble() * bounds[1];
+					break;
+				}
+
+				case GAUSSIAN:
+					longs[a[pc]] = random.nextGaussian(((double[]) operands[pc])[0]);
+					break;
+
+				case BOOLEAN:
+					longs[a[pc]] = random.randomBoolean() ? 1L : 0L;
+					break;
+
+				case NOW:
+					refs[a[pc]] = placeholders ? PurchaseOrderTemplate.PLACEHOLDER_INSTANT :
+							state.logicalTime ? Instant.ofEpochMilli(PurchaseOrderBuilder.LOGICAL_EPOCH_MILLI + sequence) : Instant.now();
+					break;
+
+				case SEQUENCE:
+					longs[a[pc]] = sequence;
+					break;
+
+				case PICK:
+					longs[a[pc]] = ((TemplateDictionary) operands[pc]).pick(random);
+					break;
+
+				case PICK_LIST: {
+					final String[] list = ((String[][]) operands[pc])[(int) longs[b[pc]]];
+					refs[a[pc]] = list[random.nextInt(list.length)];
+					break;
+				}
+
+				case ITEM:
+					longs[a[pc]] = longs[b[pc]] % values[pc];
+					break;
+
+				case CONCAT:
+					refs[a[pc]] = concat((Part[]) operands[pc], state, placeholders);
+					break;
+
+				case AMOUNT: {
+					double product = 1d;
+					for (Factor factor : (Factor[]) operands[pc]) {
+						product *= factor.numbers != null ? factor.numbers[(int) longs[factor.slot]] :
+								factor.lazy != null ? factor.lazy.number((int) longs[factor.slot]) :
+								factor.slot == -1 ? factor.constant : factor.integer ? longs[factor.slot] : doubles[factor.slot];
+					}
+					amount += product;
+					break;
+				}
+
+				default:
+					throw new IllegalStateException("Unknown instruction " + codes[pc]);
+			}
+
+			pc = next;
+		}
+
+		return amount;
+	}
+
+	private static String concat(Part[] parts, State state, boolean placeholders) {
+		// sized and encoded once from all the parts, as the + operator, where a builder would be inflated to UTF-16
+		// by the first non Latin-1 name
+		final StringJoiner text = new StringJoiner("");
+		for (Part part : parts) {
+			switch (part.kind) {
+				case Part.TEXT:
+					text.add((String) part.value);
+					break;
+
+				case Part.STRING: {
+					final String value = (String) state.refs[part.slot];
+					text.add(value.length() <= part.length ? value : value.substring(0, part.length));
+					break;
+				}
+
+				case Part.LONG:
+					text.add(Long.toString(state.longs[part.slot]));
+					break;
+
+				case Part.DOUBLE:
+					text.add(Double.toString(state.doubles[part.slot]));
+					break;
+
+				case Part.BOOLEAN:
+					text.add(state.longs[part.slot] != 0L ? "true" : "false");
+					break;
+
+				case Part.COLUMN:
+					text.add(String.valueOf(((Object[]) part.value)[(int) state.longs[part.slot]]));
+					break;
+
+				case Part.LAZY_COLUMN: {
+					final String value = String.valueOf(((TemplateDictionary.LazyColumn) part.value).get((int) state.longs[part.slot]));
+					text.add(value.length() <= part.length ? value : value.substring(0, part.length));
+					break;
+				}
+
+				case Part.DATE:
+					text.add(state.date(part.length, (Instant) state.refs[part.slot]));
+					break;
+
+				case Part.UNIQUE:
+				default:
+					if (placeholders) {
+						text.add(UNIQUE_SUFFIX);
+					} else {
+						// the sequence of the document being generated
+						text.add(state.origin).add(Long.toString(state.sequence - 1));
+					}
+					break;
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Piece of a $concat string.
+	 */
+	private static final class Part {
+		static final int TEXT = 0;
+		static final int STRING = 1;
+		static final int LONG = 2;
+		static final int DOUBLE = 3;
+		static final int BOOLEAN = 4;
+		static final int COLUMN = 5;
+		static final int DATE = 6;
+		static final int UNIQUE = 7;
+		static final int LAZY_COLUMN = 8;
+
+		final int kind;
+		final int slot;
+		// text or column values
+		final Object value;
+		// first characters kept, or date cache
+		final int length;
+
+		Part(int kind, int slot, Object value, int length) {
+			this.kind = kind;
+			this.slot = slot;
+			this.value = value;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Term of an $amount product: a dictionary column, an integer or double register, or a constant.
+	 */
+	private static final class Factor {
+		final int slot;
+		final boolean integer;
+		final double[] numbers;
+		final TemplateDictionary.LazyColumn lazy;
+		final double constant;
+
+		Factor(int slot, boolean integer, double[] numbers, double constant) {
+			this(slot, integer, numbers, null, constant);
+		}
+
+		Factor(int slot, boolean integer, double[] numbers, TemplateDictionary.LazyColumn lazy, double constant) {
+			this.slot = slot;
+			this.integer = integer;
+			this.numbers = numbers;
+			this.lazy = lazy;
+			this.constant = constant;
+		}
+	}
+
+	private enum Type {
+		STRING, LONG, DOUBLE, BOOLEAN, INSTANT, ROW
+	}
+
+	/**
+	 * Register holding a value computed by the program, or a column of the row held by a register.
+	 */
+	private static final class Value {
+		final Type type;
+		final int slot;
+		final TemplateDictionary dictionary;
+		final int column;
+
+		Value(Type type, int slot) {
+			this(type, slot, null, 0);
+		}
+
+		Value(Type type, int slot, TemplateDictionary dictionary, int column) {
+			this.type = type;
+			this.slot = slot;
+			this.dictionary = dictionary;
+			this.column = column;
+		}
+	}
+
+	/**
+	 * Variables visible from an object of the template, and index of the innermost array.
+	 */
+	private static final class Scope {
+		final Scope parent;
+		final int index;
+		final Map<String, Value> variables = new HashMap<>();
+
+		Scope(Scope parent, int index) {
+			this.parent = parent;
+			this.index = index;
+		}
+
+		Value lookup(String name) {
+			for (Scope scope = this; scope != null; scope = scope.parent) {
+				final Value value = scope.variables.get(name);
+				if (value != null) {
+					return value;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final class Instruction {
+		final int code;
+		final String key;
+		int a;
+		int b;
+		int c;
+		long value;
+		Object operand;
+
+		Instruction(int code, String key) {
+			this.code = code;
+			this.key = key;
+		}
+	}
+
+	private static final class Compiler {
+		private static final String[] GENERATORS = {"$pick", "$item", "$int", "$double", "$gaussian", "$boolean", "$now", "$sequence",
+				"$index", "$var", "$concat", "$date", "$uniqueSuffix", "$when", "$array"};
+
+		final String name;
+		final Map<String, TemplateDictionary> dictionaries = new HashMap<>();
+		final List<Instruction> program = new ArrayList<>();
+		int refs;
+		int longs;
+		int doubles;
+		int dates;
+		boolean now;
+		boolean date;
+		boolean uniqueSuffix;
+
+		Compiler(String name) {
+			this.name = name;
+		}
+
+		private Instruction emit(int code, String key) {
+			final Instruction instruction = new Instruction(code, key);
+			program.add(instruction);
+			return instruction;
+		}
+
+		private Instruction emit(int code, String key, int a) {
+			final Instruction instruction = emit(code, key);
+			instruction.a = a;
+			return instruction;
+		}
+
+		private IllegalArgumentException error(String path, String message) {
+			return new IllegalArgumentException("Template " + name + ", " + path + ": " + message);
+		}
+
+		void object(String key, JsonNode node, Scope parent, String path) throws SQLException {
+			emit(START_OBJECT, key);
+			final Scope scope = new Scope(parent, parent.index);
+
+			final JsonNode let = node.get("$let");
+			if (let != null) {
+				if (!let.isObject()) {
+					throw error(path, "$let must be an object");
+				}
+				for (Iterator<Map.Entry<String, JsonNode>> it = let.fields(); it.hasNext(); ) {
+					final Map.Entry<String, JsonNode> entry = it.next();
+					scope.variables.put(entry.getKey(), expression(entry.getValue(), scope, path + ".$let." + entry.getKey()));
+				}
+			}
+
+			for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+				final Map.Entry<String, JsonNode> entry = it.next();
+				final String field = entry.getKey();
+				if ("$amount".equals(field)) {
+					amount(entry.getValue(), scope, path + ".$amount");
+				}
+				else if (field.startsWith("$")) {
+					if (!"$let".equals(field) && !("$dictionaries".equals(field) && parent.parent == null)) {
+						throw error(path, "unknown directive " + field);
+					}
+				}
+				else {
+					write(field, entry.getValue(), scope, path + "." + field);
+				}
+			}
+
+			emit(END, null);
+		}
+
+		void write(String key, JsonNode node, Scope scope, String path) throws SQLException {
+			if (node.isNull()) {
+				emit(WRITE_NULL, key);
+			}
+			else if (node.isTextual()) {
+				emit(WRITE_TEXT, key).operand = node.asText();
+			}
+			else if (node.isValueNode()) {
+				emit(WRITE_CONSTANT, key).operand = TemplateDictionary.value(path, node);
+			}
+			else if (node.isArray()) {
+				emit(START_ARRAY, key);
+				for (int i = 0; i < node.size(); i++) {
+					write(null, node.get(i), scope, path + "[" + i + "]");
+				}
+				emit(END, null);
+			}
+			else {
+				final String generator = generator(node, path);
+				if (generator == null) {
+					object(key, node, scope, path);
+				}
+				else if ("$when".equals(generator)) {
+					when(key, node, scope, path);
+				}
+				else if ("$array".equals(generator)) {
+					array(key, node, scope, path);
+				}
+				else {
+					write(key, expression(node, scope, path), path);
+				}
+			}
+		}
+
+		private void write(String key, Value value, String path) {
+			switch (value.type) {
+				case STRING:
+					emit(WRITE_STRING, key, value.slot);
+					break;
+				case LONG:
+					emit(WRITE_LONG, key, value.slot);
+					break;
+				case DOUBLE:
+					emit(WRITE_DOUBLE, key, value.slot);
+					break;
+				case BOOLEAN:
+					emit(WRITE_BOOLEAN, key, value.slot);
+					break;
+				case INSTANT:
+					emit(WRITE_INSTANT, key, value.slot);
+					break;
+				case ROW:
+				default: {
+					final Object column = value.dictionary.values(value.column);
+					if (column instanceof String[][]) {
+						throw error(path, "column " + value.dictionary.columnName(value.column) + " of " + value.dictionary.name + " is a list, pick a value from it");
+					}
+					emit(column instanceof String[] ? WRITE_STRING_COLUMN : column instanceof TemplateDictionary.LazyColumn ? WRITE_LAZY_COLUMN : WRITE_VALUE_COLUMN,
+							key, value.slot).operand = column;
+					break;
+				}
+			}
+		}
+
+		/**
+		 * @return the generator of an object, null for a plain object
+		 * @throws IllegalArgumentException if the object has fields the generator does not take
+		 */
+		private String generator(JsonNode node, String path) {
+			String generator = null;
+			for (String candidate : GENERATORS) {
+				if (node.has(candidate)) {
+					generator = candidate;
+					break;
+				}
+			}
+			if (generator == null) {
+				return null;
+			}
+
+			for (Iterator<String> it = node.fieldNames(); it.hasNext(); ) {
+				final String field = it.next();
+				if (!field.equals(generator) && !takes(generator, field)) {
+					throw error(path, generator + " does not take \"" + field + "\"");
+				}
+			}
+			return generator;
+		}
+
+		private static boolean takes(String generator, String field) {
+			switch (generator) {
+				case "$when":
+					return "is".equals(field) || "then".equals(field) || "else".equals(field);
+				case "$array":
+					return "of".equals(field) || "omitEmpty".equals(field);
+				default:
+					return "as".equals(field) || "first".equals(field);
+			}
+		}
+
+		private void when(String key, JsonNode node, Scope scope, String path) throws SQLException {
+			final Value condition = expression(node.get("$when"), scope, path + ".$when");
+			final JsonNode is = node.get("is");
+			if ((condition.type != Type.LONG && condition.type != Type.BOOLEAN) || is == null || !(is.isIntegralNumber() || is.isBoolean())) {
+				throw error(path, "$when needs an integer or boolean generator and an \"is\" value");
+			}
+
+			final Instruction branch = emit(BRANCH, null, condition.slot);
+			branch.value = is.isBoolean() ? (is.asBoolean() ? 1L : 0L) : is.asLong();
+			if (node.has("then")) {
+				write(key, node.get("then"), scope, path + ".then");
+			}
+			if (node.has("else")) {
+				final Instruction jump = emit(JUMP, null);
+				branch.c = program.size();
+				write(key, node.get("else"), scope, path + ".else");
+				jump.c = program.size();
+			}
+			else {
+				branch.c = program.size();
+			}
+		}
+
+		private void array(String key, JsonNode node, Scope scope, String path) throws SQLException {
+			final JsonNode cardinality = node.get("$array");
+			final int count;
+			if (cardinality.isIntegralNumber()) {
+				count = longs++;
+				emit(SET, null, count).value = cardinality.asLong();
+			}
+			else {
+				final Value value = expression(cardinality, scope, path + ".$array");
+				if (value.type != Type.LONG) {
+					throw error(path, "$array needs a number of elements");
+				}
+				count = value.slot;
+			}
+			if (!node.has("of")) {
+				throw error(path, "$array needs the element template \"of\"");
+			}
+
+			final int index = longs++;
+			final Instruction start = emit(ARRAY, key, count);
+			start.b = index;
+			start.value = node.path("omitEmpty").asBoolean(false) ? 1L : 0L;
+			final int body = program.size();
+			write(null, node.get("of"), new Scope(scope, index), path + ".of");
+			final Instruction loop = emit(NEXT, null, count);
+			loop.b = index;
+			loop.c = body;
+			start.c = program.size();
+			emit(END, null);
+		}
+
+		private void amount(JsonNode node, Scope scope, String path) throws SQLException {
+			final JsonNode terms = node.has("$multiply") ? node.get("$multiply") : MAPPER.createArrayNode().add(node);
+			final Factor[] factors = new Factor[terms.size()];
+			for (int i = 0; i < factors.length; i++) {
+				final JsonNode term = terms.get(i);
+				if (term.isNumber()) {
+					factors[i] = new Factor(-1, false, null, term.asDouble());
+					continue;
+				}
+				final Value value = expression(term, scope, path);
+				if (value.type == Type.LONG || value.type == Type.DOUBLE) {
+					factors[i] = new Factor(value.slot, value.type == Type.LONG, null, 0d);
+				}
+				else if (value.type == Type.ROW && value.dictionary.isNumeric(value.column)) {
+					final Object column = value.dictionary.values(value.column);
+					factors[i] = column instanceof TemplateDictionary.LazyColumn ?
+							new Factor(value.slot, false, null, (TemplateDictionary.LazyColumn) column, 0d) :
+							new Factor(value.slot, false, value.dictionary.numbers(value.column), 0d);
+				}
+				else {
+					throw error(path, "$amount needs numbers");
+				}
+			}
+			emit(AMOUNT, null).operand = factors;
+		}
+
+		Value expression(JsonNode node, Scope scope, String path) throws SQLException {
+			final String generator = node != null && node.isObject() ? generator(node, path) : null;
+			if (generator == null) {
+				throw error(path, "generator expected instead of " + node);
+			}
+			final JsonNode argument = node.get(generator);
+
+			final Value value;
+			switch (generator) {
+				case "$pick":
+					value = pick(argument, scope, path);
+					break;
+
+				case "$item": {
+					if (scope.index == -1) {
+						throw error(path, "$item outside of an $array");
+					}
+					final TemplateDictionary dictionary = dictionary(argument.asText(), path);
+					value = new Value(Type.ROW, longs++, dictionary, 0);
+					final Instruction item = emit(ITEM, null, value.slot);
+					item.b = scope.index;
+					item.value = dictionary.size;
+					break;
+				}
+
+				case "$int": {
+					final long min = bound(argument, 0, path);
+					final long max = bound(argument, 1, path);
+					if (max < min || max - min >= Integer.MAX_VALUE) {
+						throw error(path, "$int needs [min, max] with min <= max");
+					}
+					value = new Value(Type.LONG, longs++);
+					final Instruction random = emit(INT, null, value.slot);
+					random.b = (int) (max - min + 1);
+					random.value = min;
+					break;
+				}
+
+				case "$double": {
+					if (!argument.isArray() || argument.size() != 2 || !argument.get(0).isNumber() || !argument.get(1).isNumber()) {
+						throw error(path, "$double needs [min, max]");
+					}
+					value = new Value(Type.DOUBLE, doubles++);
+					emit(DOUBLE, null, value.slot).operand = new double[]{argument.get(0).asDouble(), argument.get(1).asDouble() - argument.get(0).asDouble()};
+					break;
+				}
+
+				case "$gaussian":
+					if (!argument.isNumber()) {
+						throw error(path, "$gaussian needs a multiplier");
+					}
+					value = new Value(Type.LONG, longs++);
+					emit(GAUSSIAN, null, value.slot).operand = new double[]{argument.asDouble()};
+					break;
+
+				case "$boolean":
+					value = new Value(Type.BOOLEAN, longs++);
+					emit(BOOLEAN, null, value.slot);
+					break;
+
+				case "$now":
+					value = new Value(Type.INSTANT, refs++);
+					emit(NOW, null, value.slot);
+					now = true;
+					break;
+
+				case "$sequence":
+					value = new Value(Type.LONG, longs++);
+					emit(SEQUENCE, null, value.slot);
+					break;
+
+				case "$index":
+					if (scope.index == -1) {
+						throw error(path, "$index outside of an $array");
+					}
+					value = new Value(Type.LONG, scope.index);
+					break;
+
+				case "$var":
+					value = node.has("first") ? concat(new Part[]{part(node, scope, path)}) : variable(argument.asText(), scope, path);
+					break;
+
+				case "$concat": {
+					if (!argument.isArray()) {
+						throw error(path, "$concat needs an array");
+					}
+					final Part[] parts = new Part[argument.size()];
+					for (int i = 0; i < parts.length; i++) {
+						parts[i] = part(argument.get(i), scope, path + ".$concat[" + i + "]");
+					}
+					value = concat(parts);
+					break;
+				}
+
+				case "$date":
+				case "$uniqueSuffix":
+					value = concat(new Part[]{part(node, scope, path)});
+					break;
+
+				default:
+					throw error(path, generator + " cannot be used as a value here");
+			}
+
+			if (node.has("as")) {
+				scope.variables.put(node.get("as").asText(), value);
+			}
+			return value;
+		}
+
+		private long bound(JsonNode argument, int index, String path) {
+			if (!argument.isArray() || argument.size() != 2 || !argument.get(index).isIntegralNumber()) {
+				throw error(path, "[min, max] expected");
+			}
+			return argument.get(index).asLong();
+		}
+
+		private Value pick(JsonNode argument, Scope scope, String path) throws SQLException {
+			if (argument.isArray()) {
+				final TemplateDictionary dictionary = TemplateDictionary.of(path, argument);
+				final Value value = new Value(Type.ROW, longs++, dictionary, 0);
+				emit(PICK, null, value.slot).operand = dictionary;
+				return value;
+			}
+
+			final String name = argument.asText();
+			if (name.indexOf('.') != -1) {
+				// a value of a list column of a row picked before
+				final Value row = variable(name, scope, path);
+				final Object column = row.dictionary.values(row.column);
+				if (!(column instanceof String[][])) {
+					throw error(path, name + " is not a list column");
+				}
+				final Value value = new Value(Type.STRING, refs++);
+				final Instruction pick = emit(PICK_LIST, null, value.slot);
+				pick.b = row.slot;
+				pick.operand = column;
+				return value;
+			}
+
+			final TemplateDictionary dictionary = dictionary(name, path);
+			final Value value = new Value(Type.ROW, longs++, dictionary, 0);
+			emit(PICK, null, value.slot).operand = dictionary;
+			return value;
+		}
+
+		private TemplateDictionary dictionary(String name, String path) {
+			TemplateDictionary dictionary = dictionaries.get(name);
+			if (dictionary == null) {
+				dictionary = TemplateDictionary.builtIn(name);
+				if (dictionary == null) {
+					throw error(path, "unknown dictionary " + name);
+				}
+				dictionaries.put(name, dictionary);
+			}
+			return dictionary;
+		}
+
+		private Value variable(String name, Scope scope, String path) {
+			final int dot = name.indexOf('.');
+			final Value value = scope.lookup(dot == -1 ? name : name.substring(0, dot));
+			if (value == null) {
+				throw error(path, "unknown variable " + name);
+			}
+			if (dot == -1) {
+				return value;
+			}
+			if (value.type != Type.ROW) {
+				throw error(path, name.substring(0, dot) + " is not a dictionary row");
+			}
+			final int column = value.dictionary.column(name.substring(dot + 1));
+			if (column == -1) {
+				throw error(path, "unknown column " + name.substring(dot + 1) + " of " + value.dictionary.name);
+			}
+			return new Value(Type.ROW, value.slot, value.dictionary, column);
+		}
+
+		private Part part(JsonNode node, Scope scope, String path) throws SQLException {
+			if (node.isTextual()) {
+				return new Part(Part.TEXT, 0, node.asText(), 0);
+			}
+			if (node.isObject()) {
+				generator(node, path);
+			}
+			if (node.isObject() && node.has("$date")) {
+				final Value instant = variable(node.get("$date").asText(), scope, path);
+				if (instant.type != Type.INSTANT) {
+					throw error(path, "$date needs a $now variable");
+				}
+				date = true;
+				return new Part(Part.DATE, instant.slot, null, dates++);
+			}
+			if (node.isObject() && node.has("$uniqueSuffix")) {
+				uniqueSuffix = true;
+				return new Part(Part.UNIQUE, 0, null, 0);
+			}
+
+			final Value value = node.isObject() && node.has("$var") ? variable(node.get("$var").asText(), scope, path) : expression(node, scope, path);
+			switch (value.type) {
+				case STRING:
+					return new Part(Part.STRING, value.slot, null, node.path("first").asInt(Integer.MAX_VALUE));
+				case LONG:
+					return new Part(Part.LONG, value.slot, null, 0);
+				case DOUBLE:
+					return new Part(Part.DOUBLE, value.slot, null, 0);
+				case BOOLEAN:
+					return new Part(Part.BOOLEAN, value.slot, null, 0);
+				case ROW: {
+					final Object column = value.dictionary.values(value.column);
+					if (column instanceof String[][]) {
+						throw error(path, "column " + value.dictionary.columnName(value.column) + " of " + value.dictionary.name + " is a list, pick a value from it");
+					}
+					if (column instanceof TemplateDictionary.LazyColumn) {
+						return new Part(Part.LAZY_COLUMN, value.slot, column, node.path("first").asInt(Integer.MAX_VALUE));
+					}
+					if (node.has("first")) {
+						// first characters of the column values, computed once
+						final Object[] values = (Object[]) column;
+						final String[] prefixes = new String[values.length];
+						final int length = node.get("first").asInt();
+						for (int i = 0; i < values.length; i++) {
+							final String text = String.valueOf(values[i]);
+							prefixes[i] = text.substring(0, Math.min(length, text.length()));
+						}
+						return new Part(Part.COLUMN, value.slot, prefixes, 0);
+					}
+					return new Part(Part.COLUMN, value.slot, column, 0);
+				}
+				case INSTANT:
+				default:
+					throw error(path, "timestamps are only concatenated with $date");
+			}
+		}
+
+		private Value concat(Part[] parts) {
+			final Value value = new Value(Type.STRING, refs++);
+			emit(CONCAT, null, value.slot).operand = parts;
+			return value;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.oracle.rtgenerator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Array bound update by key of the table backing the SODA collection (layout of {@link JDBCDocumentSink}): JSON merge
+ * patches applied in the database as SODA mergeOne would, or whole documents replaced. Each updated document gets a
+ * new version UUID and last modification time, as with SODA. Uses the connection of its sink, which commits and rolls
+ * back.
+ */
+class DocumentUpdater implements AutoCloseable {
+	private final UpdateWorkload.Mode mode;
+	private final PreparedStatement update;
+	private final char[] uuid = new char[32];
+
+	DocumentUpdater(Connection c, String collectionName, UpdateWorkload.Mode mode) throws SQLException {
+		this.mode = mode;
+		// prepared once, kept for the whole life of the sink
+		update = c.prepareStatement("update " + collectionName + " set JSON_DOCUMENT = " +
+				(mode == UpdateWorkload.Mode.MERGE ? "json_mergepatch(JSON_DOCUMENT, ? returning blob format oson error on error)" : "?") +
+				", VERSION = ?, LAST_MODIFIED = sys_extract_utc(SYSTIMESTAMP) where ID = ?");
+	}
+
+	/**
+	 * @return documents actually updated
+	 */
+	int update(UpdateBatch batch) throws SQLException {
+		try {
+			for (int i = 0; i < batch.size; i++) {
+				if (mode == UpdateWorkload.Mode.MERGE) {
+					update.setString(1, batch.patches[i]);
+				}
+				else {
+					JDBCDocumentSink.setDocument(update, 1, batch.documents[i]);
+				}
+				update.setString(2, JDBCDocumentSink.randomUUID(uuid));
+				update.setString(3, batch.keys[i]);
+				update.addBatch();
+			}
+
+			int updated = 0;
+			for (int count : update.executeBatch()) {
+				// the count of each row may be unknown
+				updated += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+			}
+			return updated;
+		} catch (SQLException e) {
+			try {
+				update.clearBatch();
+			} catch (SQLException ignored) {
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		update.close();
+	}
+}
@@ -0,0 +1,149 @@
+package com.oracle.rtgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the documents into rotating memory-mapped files, one series of files per generator thread so that no
+ * locking is needed.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ *     <li>OSON: each document is preceded by its length as a 4 bytes big endian integer</li>
+ *     <li>JSON: newline-delimited JSON text documents</li>
+ * </ul>
+ * Files are named <code>&lt;prefix&gt;-&lt;thread&gt;-&lt;sequence&gt;.oson|.json</code> and truncated to their written
+ * size when rotated or closed, once unmapped: a mapped file cannot be truncated on Windows. Nothing is forced to disk,
+ * the pages are written back by the operating system.
+ */
+public class FileDocumentSink implements DocumentSink {
+	public enum Format {
+		OSON, JSON
+	}
+
+	public static String DIRECTORY = "./documents";
+	public static String PREFIX = "purchase_orders";
+	public static Format FORMAT = Format.OSON;
+	public static long FILE_SIZE = 256L * 1024 * 1024;
+
+	// sun.misc.Unsafe.invokeCleaner(ByteBuffer) bound to the Unsafe instance, null if not available
+	private static final MethodHandle UNMAP = unmapHandle();
+
+	private final int id;
+	private final Path directory;
+	private int sequence;
+	private Path file;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	public FileDocumentSink(int id) throws IOException {
+		this.id = id;
+		this.directory = new File(DIRECTORY).toPath();
+		directory.toFile().mkdirs();
+		rotate();
+	}
+
+	@Override
+	public void insert(DocumentBatch batch) throws IOException {
+		for (int i = 0; i < batch.size; i++) {
+			final byte[] document = batch.documents[i];
+			final int recordSize = document.length + (FORMAT == Format.OSON ? 4 : 1);
+
+			if (buffer.remaining() < recordSize) {
+				if (recordSize > FILE_SIZE) {
+					throw new IOException("Document of " + document.length + " bytes larger than the file size");
+				}
+				rotate();
+			}
+
+			if (FORMAT == Format.OSON) {
+				buffer.putInt(document.length);
+				buffer.put(document);
+			}
+			else {
+				buffer.put(document);
+				buffer.put((byte) '\n');
+			}
+		}
+	}
+
+	@Override
+	public void commit() {
+	}
+
+	/**
+	 * Nothing to update: the documents of a file have no keys, the loader refuses updates for this target.
+	 *
+	 * @return 0
+	 */
+	@Override
+	public int update(UpdateBatch batch) {
+		return 0;
+	}
+
+	private void rotate() throws IOException {
+		closeCurrent();
+
+		final String extension = FORMAT == Format.OSON ? ".oson" : ".json";
+		file = directory.resolve(String.format("%s-%03d-%06d%s", PREFIX, id, sequence++, extension));
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+	}
+
+	private void closeCurrent() throws IOException {
+		if (channel != null) {
+			final int written = buffer.position();
+			channel.close();
+			channel = null;
+			unmap(buffer);
+			buffer = null;
+
+			try (FileChannel truncated = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				truncated.truncate(written);
+			}
+		}
+	}
+
+	/**
+	 * Releases the mapping now rather than when the buffer is garbage collected. The buffer must not be used anymore.
+	 */
+	private static void unmap(MappedByteBuffer buffer) throws IOException {
+		if (UNMAP != null) {
+			try {
+				UNMAP.invokeExact((ByteBuffer) buffer);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IOException("Could not unmap the file", e);
+			}
+		}
+	}
+
+	private static MethodHandle unmapHandle() {
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			return MethodHandles.lookup()
+					.findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+					.bindTo(theUnsafe.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// the mapping is then released by the garbage collector, the truncation may fail on Windows
+			return null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closeCurrent();
+	}
+}
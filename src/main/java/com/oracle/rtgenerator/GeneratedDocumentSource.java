@@ -0,0 +1,39 @@
+package com.oracle.rtgenerator;
+
+import java.sql.SQLException;
+
+/**
+ * Generates every document on the calling thread, nothing is replayed.
+ */
+public class GeneratedDocumentSource implements DocumentSource {
+	private final PurchaseOrderBuilder builder;
+	private final DocumentBatch batch;
+	private final double[] amount = new double[1];
+
+	public GeneratedDocumentSource(int id, BatchSizeController batchSizeController, boolean json) {
+		this.builder = new PurchaseOrderBuilder(json, MyRandom.forStream(MyRandom.Stream.SESSION, id), 0L);
+		this.batch = new DocumentBatch(batchSizeController);
+	}
+
+	@Override
+	public DocumentBatch next() throws SQLException {
+		final IngestEvents.Generate event = new IngestEvents.Generate();
+		event.begin();
+		while (!batch.isFull()) {
+			final byte[] document = builder.generatePurchaseOrder(amount, 0);
+			batch.add(document, amount[0]);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.documents = batch.size;
+			event.bytes = batch.bytes;
+			event.commit();
+		}
+		return batch;
+	}
+
+	@Override
+	public void release(DocumentBatch batch) {
+		batch.clear();
+	}
+}
@@ -0,0 +1,42 @@
+package com.oracle.rtgenerator;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * HikariCP pool of a fixed size. Its proxies hide the Oracle extensions, see {@link #oracleConnection(Connection)}.
+ */
+public class HikariConnectionPool extends ConnectionPool {
+	private final HikariDataSource dataSource;
+
+	public HikariConnectionPool(String url, String user, String password, int size) {
+		super(Backend.HIKARI, size);
+
+		final HikariConfig config = new HikariConfig();
+		config.setPoolName("HikariPool-" + Thread.currentThread().getName());
+		config.setJdbcUrl(url);
+		config.setUsername(user);
+		config.setPassword(password);
+		config.setMinimumIdle(size);
+		config.setMaximumPoolSize(size);
+		// passed to the driver with the user and password
+		for (Map.Entry<Object, Object> property : connectionProperties().entrySet()) {
+			config.addDataSourceProperty((String) property.getKey(), property.getValue());
+		}
+		dataSource = new HikariDataSource(config);
+	}
+
+	@Override
+	protected Connection borrow() throws SQLException {
+		return dataSource.getConnection();
+	}
+
+	@Override
+	public void close() {
+		dataSource.close();
+	}
+}
@@ -0,0 +1,63 @@
+package com.oracle.rtgenerator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder events of the ingest hot path, one per batch, so that a recording correlates the stalls of the
+ * generators with GC pauses and safepoints (e.g. {@code -XX:StartFlightRecording:filename=loader.jfr}). They are
+ * enabled by default, and only cost a branch when no recording is running.
+ */
+final class IngestEvents {
+	private IngestEvents() {
+	}
+
+	@Name("com.oracle.rtgenerator.Generate")
+	@Label("Generate Batch")
+	@Category({"RT Generator", "Ingest"})
+	@Description("Purchase orders generated into one batch")
+	@StackTrace(false)
+	static final class Generate extends Event {
+		@Label("Documents")
+		int documents;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.oracle.rtgenerator.Insert")
+	@Label("Insert Batch")
+	@Category({"RT Generator", "Ingest"})
+	@Description("One batch sent to the target (SODA insertAndGet, JDBC array insert or file write)")
+	@StackTrace(false)
+	static final class Insert extends Event {
+		@Label("Session")
+		int session;
+
+		@Label("Documents")
+		int documents;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.oracle.rtgenerator.Commit")
+	@Label("Commit Batch")
+	@Category({"RT Generator", "Ingest"})
+	@Description("Commit of one inserted batch")
+	@StackTrace(false)
+	static final class Commit extends Event {
+		@Label("Session")
+		int session;
+
+		@Label("Documents")
+		int documents;
+	}
+}
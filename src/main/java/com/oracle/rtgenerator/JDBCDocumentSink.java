@@ -0,0 +1,158 @@
+package com.oracle.rtgenerator;
+
+import oracle.jdbc.internal.OracleConnection;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Inserts the OSON documents straight into the table backing the SODA collection with an array bound insert, without
+ * going through SODA. The table layout is the one created by the loader (see also src/main/sql/ddl.sql): keys and
+ * versions are UUIDs generated on the client side as SODA would, the creation and last modification times are set by
+ * the database. Updates go through a {@link DocumentUpdater} on the same connection.
+ */
+public class JDBCDocumentSink implements DocumentSink {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	// above this size a byte array is no more bound as a RAW but must be streamed into the BLOB
+	private static final int MAX_RAW_BIND_SIZE = 32767;
+
+	private final Connection c;
+	private final OracleConnection realConnection;
+	private final PreparedStatement insert;
+	// null without update workload
+	private final DocumentUpdater updater;
+	private final EnumSet<OracleConnection.CommitOption> commitOptions;
+	private final char[] uuid = new char[32];
+	// keys of the inserted documents for the update workload (null if none)
+	private final KeyRing keyRing;
+	private String[] batchKeys;
+
+	/**
+	 * @param updates update workload, null for inserts only
+	 */
+	public JDBCDocumentSink(ConnectionPool pool, String collectionName, EnumSet<OracleConnection.CommitOption> commitOptions, int batchSize, UpdateWorkload updates) throws SQLException {
+		this.commitOptions = commitOptions;
+		this.keyRing = updates != null ? updates.getKeys() : null;
+		this.batchKeys = keyRing != null ? new String[batchSize] : null;
+
+		c = pool.getConnection();
+		try {
+			c.setAutoCommit(false);
+			realConnection = ConnectionPool.oracleConnection(c);
+			// prepared once, kept for the whole life of the sink
+			insert = c.prepareStatement("insert into " + collectionName + " (ID, CREATED_ON, LAST_MODIFIED, VERSION, JSON_DOCUMENT) " +
+					"values (?, sys_extract_utc(SYSTIMESTAMP), sys_extract_utc(SYSTIMESTAMP), ?, ?)");
+			updater = updates != null ? new DocumentUpdater(c, collectionName, updates.getMode()) : null;
+		} catch (SQLException | RuntimeException e) {
+			c.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void insert(DocumentBatch batch) throws SQLException {
+		if (keyRing != null && batchKeys.length < batch.size) {
+			// the adaptive batch size has grown
+			batchKeys = new String[batch.documents.length];
+		}
+		try {
+			for (int i = 0; i < batch.size; i++) {
+				final String key = randomUUID(uuid);
+
+				insert.setString(1, key);
+				insert.setString(2, randomUUID(uuid));
+				setDocument(insert, 3, batch.documents[i]);
+				insert.addBatch();
+
+				if (keyRing != null) {
+					batchKeys[i] = key;
+				}
+			}
+
+			insert.executeBatch();
+
+			if (keyRing != null) {
+				keyRing.add(batchKeys, batch.size);
+			}
+		} catch (SQLException e) {
+			try {
+				insert.clearBatch();
+			} catch (SQLException ignored) {
+			}
+			rollback();
+			throw e;
+		}
+	}
+
+	@Override
+	public int update(UpdateBatch batch) throws SQLException {
+		try {
+			return updater.update(batch);
+		} catch (SQLException e) {
+			rollback();
+			throw e;
+		}
+	}
+
+	static void setDocument(PreparedStatement statement, int index, byte[] document) throws SQLException {
+		if (document.length <= MAX_RAW_BIND_SIZE) {
+			statement.setBytes(index, document);
+		}
+		else {
+			statement.setBinaryStream(index, new ByteArrayInputStream(document), document.length);
+		}
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		try {
+			realConnection.commit(commitOptions);
+		} catch (SQLException sqle) {
+			rollback();
+			throw sqle;
+		}
+	}
+
+	/**
+	 * Same format as the SODA UUID key assignment method: a random (version 4) RFC 4122 UUID written as 32 upper
+	 * case hexadecimal digits, without the dashes.
+	 */
+	static String randomUUID(char[] buffer) {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		formatUUID(random.nextLong(), random.nextLong(), buffer);
+		return new String(buffer);
+	}
+
+	static void formatUUID(long randomMostSignificantBits, long randomLeastSignificantBits, char[] target) {
+		// version 4 (random) and IETF variant
+		final long msb = randomMostSignificantBits & ~0xF000L | 0x4000L;
+		final long lsb = randomLeastSignificantBits & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+		for (int i = 0; i < 16; i++) {
+			target[i] = HEX[(int) (msb >>> (60 - 4 * i)) & 0xF];
+			target[16 + i] = HEX[(int) (lsb >>> (60 - 4 * i)) & 0xF];
+		}
+	}
+
+	private void rollback() {
+		try {
+			c.rollback();
+		} catch (SQLException ignored) {
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			insert.close();
+			if (updater != null) {
+				updater.close();
+			}
+		} finally {
+			c.close();
+		}
+	}
+}
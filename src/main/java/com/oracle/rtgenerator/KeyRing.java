@@ -0,0 +1,48 @@
+package com.oracle.rtgenerator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring of the keys of the most recently inserted documents, written by all the sinks and sampled by the
+ * update workload. Older keys are overwritten, so the memory used does not grow with the run. A sink reserves the
+ * slots of a whole batch with a single atomic operation.
+ */
+public class KeyRing {
+	private final AtomicReferenceArray<String> keys;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * @param capacity rounded up to the next power of 2
+	 */
+	public KeyRing(int capacity) {
+		final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		keys = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+	}
+
+	public void add(String[] batchKeys, int count) {
+		final long first = head.getAndAdd(count);
+		for (int i = 0; i < count; i++) {
+			keys.lazySet((int) ((first + i) & mask), batchKeys[i]);
+		}
+	}
+
+	/**
+	 * @return a random key among the most recent ones, or null if none inserted yet
+	 */
+	public String sample(MyRandom random) {
+		final long h = head.get();
+		if (h == 0L) {
+			return null;
+		}
+		final int available = (int) Math.min(h, mask + 1);
+		// a slot just reserved by a sink may not be written yet
+		return keys.get((int) ((h - 1 - random.nextInt(available)) & mask));
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+}
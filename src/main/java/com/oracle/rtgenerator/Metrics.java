@@ -1,52 +1,199 @@
 package com.oracle.rtgenerator;
 
-public class Metrics {
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
 
-	private long lastBytesSent = 0l;
-	private double bytesSentPerMs = 0.0d;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
-	private long loadedDocuments = 0l;
-	private long lastLoadedDocuments = 0l;
-	private double documentsLoadedPerMs = 0.0d;
+/**
+ * Totals published by one generator thread (the single writer) and read by the metrics displayer.
+ * <p>
+ * The totals are published as a consistent snapshot using a sequence lock: the writer makes the version odd while
+ * it updates the values and even again once done, a reader retries whenever the version is odd or changed while it
+ * was reading. Nothing is allocated nor locked by the writer. The counters are padded so that the metrics of two
+ * generators never share a cache line. Rates are computed by the displayer from the deltas between its snapshots.
+ */
+public class Metrics extends MetricsCountersPadding {
+	private static final VarHandle VERSION;
+	private static final VarHandle LOADED_DOCUMENTS;
+	private static final VarHandle BYTES_SENT;
+	private static final VarHandle SALES_PRICE;
+	private static final VarHandle UPDATED_DOCUMENTS;
+	private static final VarHandle IN_FLIGHT;
 
-	private double lastSalesPrice = 0.0d;
-	private double salesPricePerMs = 0.0d;
+	static {
+		try {
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			VERSION = lookup.findVarHandle(MetricsCounters.class, "version", long.class);
+			LOADED_DOCUMENTS = lookup.findVarHandle(MetricsCounters.class, "loadedDocuments", long.class);
+			BYTES_SENT = lookup.findVarHandle(MetricsCounters.class, "bytesSent", long.class);
+			SALES_PRICE = lookup.findVarHandle(MetricsCounters.class, "salesPrice", double.class);
+			UPDATED_DOCUMENTS = lookup.findVarHandle(MetricsCounters.class, "updatedDocuments", long.class);
+			IN_FLIGHT = lookup.findVarHandle(MetricsCounters.class, "inFlight", boolean.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	// latencies in microseconds, recorded by the generator thread without locking
+	private final SingleWriterRecorder insertLatency = new SingleWriterRecorder(3);
+	private final SingleWriterRecorder commitLatency = new SingleWriterRecorder(3);
+	// open loop only: from the intended start time of the batch to the end of its commit
+	private final SingleWriterRecorder responseTime = new SingleWriterRecorder(3);
+	// update workload only: update and commit of one batch of updates
+	private final SingleWriterRecorder updateLatency = new SingleWriterRecorder(3);
+	// interval histograms recycled by the displayer
+	private Histogram insertLatencyInterval;
+	private Histogram commitLatencyInterval;
+	private Histogram responseTimeInterval;
+	private Histogram updateLatencyInterval;
+	// System.nanoTime() at the end of the first commit of the generator, 0 before
+	private volatile long firstCommitTime;
 
-	private double durationInMs;
+	/**
+	 * Consistent copy of the totals of one generator, owned by the reader.
+	 */
+	public static class Snapshot {
+		long loadedDocuments;
+		long bytesSent;
+		double salesPrice;
+		long updatedDocuments;
+	}
 
-	private long lastUpdateTime = 0;
+	/**
+	 * Publishes the new totals; must only be called by the generator thread.
+	 */
+	public void update(long loadedDocuments, long bytesSent, double salesPrice, long updatedDocuments) {
+		final long v = version;
+		VERSION.setOpaque(this, v + 1);
+		VarHandle.releaseFence();
 
-	public void update(long loadedDocuments, long bytesSent, double salesPrice) {
-		final long endTime = System.currentTimeMillis();
-		durationInMs = (double) (endTime - lastUpdateTime);
-		lastUpdateTime = endTime;
+		LOADED_DOCUMENTS.setOpaque(this, loadedDocuments);
+		BYTES_SENT.setOpaque(this, bytesSent);
+		SALES_PRICE.setOpaque(this, salesPrice);
+		UPDATED_DOCUMENTS.setOpaque(this, updatedDocuments);
 
-		bytesSentPerMs = (bytesSent - lastBytesSent) / durationInMs;
-		lastBytesSent = bytesSent;
+		VERSION.setRelease(this, v + 2);
+		IN_FLIGHT.setOpaque(this, false);
+	}
 
-		this.loadedDocuments = loadedDocuments;
-		documentsLoadedPerMs = (loadedDocuments - lastLoadedDocuments) / durationInMs;
-		lastLoadedDocuments = loadedDocuments;
+	/**
+	 * A batch is being inserted and committed, until the next update; must only be called by the generator thread.
+	 */
+	public void batchStarted() {
+		IN_FLIGHT.setOpaque(this, true);
+	}
+
+	/**
+	 * The generator ended without publishing its last batch.
+	 */
+	public void batchEnded() {
+		IN_FLIGHT.setOpaque(this, false);
+	}
 
-		salesPricePerMs = (salesPrice - lastSalesPrice) / durationInMs;
-		lastSalesPrice = salesPrice;
+	public boolean isInFlight() {
+		return (boolean) IN_FLIGHT.getOpaque(this);
+	}
+
+	/**
+	 * Reads a consistent copy of the totals.
+	 */
+	public void read(Snapshot snapshot) {
+		while (true) {
+			final long v = (long) VERSION.getAcquire(this);
+			if ((v & 1L) == 0L) {
+				snapshot.loadedDocuments = (long) LOADED_DOCUMENTS.getOpaque(this);
+				snapshot.bytesSent = (long) BYTES_SENT.getOpaque(this);
+				snapshot.salesPrice = (double) SALES_PRICE.getOpaque(this);
+				snapshot.updatedDocuments = (long) UPDATED_DOCUMENTS.getOpaque(this);
+
+				VarHandle.acquireFence();
+				if ((long) VERSION.getOpaque(this) == v) {
+					return;
+				}
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	public void recordLatencies(long insertNanos, long commitNanos) {
+		insertLatency.recordValue(insertNanos / 1000L);
+		commitLatency.recordValue(commitNanos / 1000L);
+	}
 
-		//System.out.println("Thread: "+durationInMs+", "+this.loadedDocuments+", "+ bytesSentPerMs +", "+ documentsLoadedPerMs +", "+ salesPricePerMs);
+	/**
+	 * @param nanos System.nanoTime() at the end of the first commit
+	 */
+	public void recordFirstCommit(long nanos) {
+		firstCommitTime = nanos;
 	}
 
-	public long getTotalLoadedDocuments() {
-		return loadedDocuments;
+	/**
+	 * @return System.nanoTime() at the end of the first commit, 0 if none yet
+	 */
+	public long getFirstCommitTime() {
+		return firstCommitTime;
 	}
 
-	public double getBytesSentPerMs() {
-		return bytesSentPerMs;
+	public void recordResponseTime(long nanos) {
+		responseTime.recordValue(Math.max(0L, nanos) / 1000L);
 	}
 
-	public double getDocumentsLoadedPerMs() {
-		return documentsLoadedPerMs;
+	public void recordUpdateLatency(long nanos) {
+		updateLatency.recordValue(nanos / 1000L);
 	}
 
-	public double getSalesPricePerMs() {
-		return salesPricePerMs;
+	/**
+	 * @return the insert latencies recorded since the previous call, only valid until the next call
+	 */
+	public Histogram getInsertLatencyInterval() {
+		insertLatencyInterval = insertLatency.getIntervalHistogram(insertLatencyInterval);
+		return insertLatencyInterval;
 	}
+
+	/**
+	 * @return the commit latencies recorded since the previous call, only valid until the next call
+	 */
+	public Histogram getCommitLatencyInterval() {
+		commitLatencyInterval = commitLatency.getIntervalHistogram(commitLatencyInterval);
+		return commitLatencyInterval;
+	}
+
+	/**
+	 * @return the response times recorded since the previous call, only valid until the next call
+	 */
+	public Histogram getResponseTimeInterval() {
+		responseTimeInterval = responseTime.getIntervalHistogram(responseTimeInterval);
+		return responseTimeInterval;
+	}
+
+	/**
+	 * @return the update batch latencies recorded since the previous call, only valid until the next call
+	 */
+	public Histogram getUpdateLatencyInterval() {
+		updateLatencyInterval = updateLatency.getIntervalHistogram(updateLatencyInterval);
+		return updateLatencyInterval;
+	}
+}
+
+/**
+ * Superclass fields are laid out before subclass fields: these paddings keep the counters away from the object
+ * header and from the fields of the neighbouring objects.
+ */
+abstract class MetricsPadding {
+	long p01, p02, p03, p04, p05, p06, p07, p08;
+}
+
+abstract class MetricsCounters extends MetricsPadding {
+	long version;
+	long loadedDocuments;
+	long bytesSent;
+	double salesPrice;
+	long updatedDocuments;
+	boolean inFlight;
+}
+
+abstract class MetricsCountersPadding extends MetricsCounters {
+	long p11, p12, p13, p14, p15, p16, p17, p18;
 }
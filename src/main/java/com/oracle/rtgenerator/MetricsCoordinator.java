@@ -0,0 +1,172 @@
+package com.oracle.rtgenerator;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives the metrics published by several loaders (see {@link MetricsPublisher}) and displays the aggregated
+ * throughput and latencies of the whole fleet, as a single loader would.
+ * <p>
+ * Totals are cumulative per loader, so a lost datagram only delays them; a loader joining after the coordinator is
+ * counted from its first message, and a loader restarting with the same client id keeps the totals of its previous
+ * runs. The latency histograms received between two ticks are merged, the percentiles are
+ * hence computed over all the samples of all the loaders and not averaged.
+ */
+public class MetricsCoordinator implements Runnable {
+	// a loader silent for longer is no more counted as active
+	private static final long CLIENT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(3L);
+
+	private final DatagramChannel channel;
+	private final Map<String, Client> clients = new HashMap<>();
+	// corrupted or foreign datagrams, reported once per source
+	private final Set<SocketAddress> rejectedSources = new HashSet<>();
+	private long rejectedDatagrams;
+	private volatile boolean stopped;
+
+	private static class Client {
+		long runId, previousRunId;
+		long sequence;
+		int sessions;
+		long lastSeen;
+		long baseDocuments, baseBytes;
+		double baseSalesPrice;
+		// totals of the previous runs of the same client id
+		long previousDocuments, previousBytes;
+		double previousSalesPrice;
+		long documents, bytes;
+		double salesPrice;
+		final Histogram insertLatency = new Histogram(3);
+		final Histogram commitLatency = new Histogram(3);
+		final Histogram responseTime = new Histogram(3);
+	}
+
+	public MetricsCoordinator(int port) throws IOException {
+		channel = DatagramChannel.open();
+		channel.bind(new InetSocketAddress(port));
+	}
+
+	/**
+	 * Receives the messages until stopped.
+	 */
+	@Override
+	public void run() {
+		final ByteBuffer buffer = ByteBuffer.allocate(MetricsMessage.MAX_SIZE);
+		while (!stopped) {
+			SocketAddress source = null;
+			try {
+				buffer.clear();
+				source = channel.receive(buffer);
+				buffer.flip();
+
+				final MetricsMessage message = MetricsMessage.decode(buffer);
+				if (message != null) {
+					accept(message);
+				} else {
+					reject(source, "not a metrics message");
+				}
+			} catch (ClosedChannelException e) {
+				// stopped
+				return;
+			} catch (Exception e) {
+				// corrupted datagram
+				reject(source, e.toString());
+			}
+		}
+	}
+
+	private synchronized void reject(SocketAddress source, String reason) {
+		rejectedDatagrams++;
+		if (rejectedSources.add(source)) {
+			System.out.println("Ignoring the datagrams of " + source + ": " + reason);
+		}
+	}
+
+	private synchronized void accept(MetricsMessage message) {
+		Client client = clients.get(message.clientId);
+		if (client == null) {
+			client = new Client();
+			clients.put(message.clientId, client);
+			start(client, message);
+		}
+		else if (message.runId == client.previousRunId) {
+			// late datagram of the run before the restart
+			return;
+		}
+		else if (message.runId != client.runId) {
+			// restarted: its totals start again from zero
+			client.previousDocuments += client.documents - client.baseDocuments;
+			client.previousBytes += client.bytes - client.baseBytes;
+			client.previousSalesPrice += client.salesPrice - client.baseSalesPrice;
+			start(client, message);
+		}
+		else if (message.sequence <= client.sequence) {
+			// reordered datagram
+			return;
+		}
+
+		client.sequence = message.sequence;
+		client.sessions = message.sessions;
+		client.lastSeen = System.nanoTime();
+		client.documents = message.documents;
+		client.bytes = message.bytes;
+		client.salesPrice = message.salesPrice;
+		client.insertLatency.add(message.insertLatency);
+		client.commitLatency.add(message.commitLatency);
+		client.responseTime.add(message.responseTime);
+	}
+
+	private static void start(Client client, MetricsMessage message) {
+		client.previousRunId = client.runId;
+		client.runId = message.runId;
+		// started before the coordinator: only what it loads from now on is accounted for
+		final boolean joined = message.sequence > 1;
+		client.baseDocuments = joined ? message.documents : 0L;
+		client.baseBytes = joined ? message.bytes : 0L;
+		client.baseSalesPrice = joined ? message.salesPrice : 0d;
+	}
+
+	/**
+	 * Adds the totals of every loader and the latencies received since the previous tick.
+	 */
+	public synchronized void collect(MetricsDisplayer md) {
+		final long now = System.nanoTime();
+		int activeClients = 0;
+		int activeSessions = 0;
+
+		for (Client client : clients.values()) {
+			md.addTotals(client.previousDocuments + client.documents - client.baseDocuments, client.previousBytes + client.bytes - client.baseBytes,
+					client.previousSalesPrice + client.salesPrice - client.baseSalesPrice,
+					client.insertLatency, client.commitLatency, client.responseTime);
+			client.insertLatency.reset();
+			client.commitLatency.reset();
+			client.responseTime.reset();
+
+			if (now - client.lastSeen <= CLIENT_TIMEOUT_NANOS) {
+				activeClients++;
+				activeSessions += client.sessions;
+			}
+		}
+
+		md.setLabel(rejectedDatagrams == 0 ? String.format("[%d clients, %d sessions] ", activeClients, activeSessions) :
+				String.format("[%d clients, %d sessions, %d rejected datagrams] ", activeClients, activeSessions, rejectedDatagrams));
+	}
+
+	public void stop() {
+		stopped = true;
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+		}
+	}
+}
@@ -1,26 +1,31 @@
 package com.oracle.rtgenerator;
 
-import oracle.soda.OracleCollection;
-import oracle.soda.OracleDatabase;
-import oracle.soda.OracleException;
-import oracle.soda.rdbms.OracleRDBMSClient;
 import oracle.sql.NUMBER;
 import oracle.sql.json.OracleJsonFactory;
 import oracle.sql.json.OracleJsonGenerator;
-import oracle.ucp.jdbc.PoolDataSource;
+import org.HdrHistogram.Histogram;
 
 import java.io.ByteArrayOutputStream;
-import java.sql.Connection;
+import java.lang.management.ManagementFactory;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.Locale;
-import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class MetricsDisplayer {
+	// wide enough for the longest line (open loop with latencies)
+	private static final String CLEAR_LINE = "\r" + " ".repeat(220);
+
 	private final long initialDocumentscount;
 	private final int resetComputedAfterNSeconds;
-	private final PoolDataSource pds;
+	private final StatisticsWriter statisticsWriter;
+	private final RateScheduler rateScheduler;
+	private final BatchSizeController batchSizeController;
+	// identifies this loader among several ones (statistics) or the cluster view (console)
+	private String clientId;
+	private int sessions;
+	private String label = "";
 	private final String collectionName;
 	private double allPrices;
 	private long allPO;
@@ -29,25 +34,86 @@ public class MetricsDisplayer {
 
 
 	private long loadedDocuments;
+	// sums of the generators totals for the current tick and the previous one
+	private final Metrics.Snapshot snapshot = new Metrics.Snapshot();
+	private long currentDocuments, currentBytes, previousDocuments, previousBytes;
+	private double currentSalesPrice, previousSalesPrice;
+	private int inFlightBatches;
+	private long currentTime, previousTime = System.nanoTime();
 	private double bytesLoadedPerSecond, avgB, minB = Double.MAX_VALUE, maxB;
 	private double documentsLoadedPerSecond, avgD, minD = Double.MAX_VALUE, maxD;
 	private double salesPricePerSecond, avgP, minP = Double.MAX_VALUE, maxP;
 
+	// latencies of the last second merged across all the generators, in microseconds
+	private final Histogram insertLatency = new Histogram(3);
+	private final Histogram commitLatency = new Histogram(3);
+	private final Histogram responseTime = new Histogram(3);
+
+	// run totals once the warm-up is over
+	private final long runStartTime = previousTime;
+	private boolean steadyState;
+	private long steadyStartTime, steadyStartDocuments, steadyStartBytes;
+	private double steadyStartSalesPrice;
+	private final Histogram steadyInsertLatency = new Histogram(3);
+	private final Histogram steadyCommitLatency = new Histogram(3);
+	private final Histogram steadyResponseTime = new Histogram(3);
+
+	// update workload, reported apart from the inserts
+	private UpdateWorkload updateWorkload;
+	private long currentUpdates, previousUpdates, steadyStartUpdates;
+	private double updatesPerSecond;
+	private final Histogram updateLatency = new Histogram(3);
+	private final Histogram steadyUpdateLatency = new Histogram(3);
+
+	// startup: shared pool built in the background (cache source only) and first commit of any generator
+	private SharedDocumentPool documentPool;
+	private final long launchTime = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+	private long firstCommitTime;
+
+	// connections of the sessions, readers and statistics writer (null for the file target)
+	private ConnectionPool connectionPool;
+
+	// readers, reported apart from the generators
+	private boolean readers;
+	private long currentQueries, previousQueries, currentReadDocuments;
+	private double queriesPerSecond;
+	private final Histogram readLatency = new Histogram(3);
+	private final Histogram[] queryLatencies = newHistograms();
+	private long steadyStartQueries, steadyStartReadDocuments;
+	private final Histogram[] steadyQueryLatencies = newHistograms();
+
 	private final OracleJsonFactory factory = new OracleJsonFactory();
 	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
 
-	public MetricsDisplayer(long initialDocumentscount, int resetComputedAfterNSeconds, PoolDataSource pds, String collectionName) {
+	/**
+	 * @param statisticsWriter persists the statistics (null when there is no database)
+	 * @param rateScheduler    open loop schedule, the target rate and the backlog are displayed (null for a closed loop)
+	 * @param batchSizeController batch size in use (null when unknown, e.g. coordinator)
+	 */
+	public MetricsDisplayer(long initialDocumentscount, int resetComputedAfterNSeconds, StatisticsWriter statisticsWriter, RateScheduler rateScheduler, BatchSizeController batchSizeController, String collectionName) {
 		this.initialDocumentscount = initialDocumentscount;
 		this.resetComputedAfterNSeconds = resetComputedAfterNSeconds;
-		this.pds = pds;
+		this.statisticsWriter = statisticsWriter;
+		this.rateScheduler = rateScheduler;
+		this.batchSizeController = batchSizeController;
 		this.collectionName = collectionName;
 	}
 
 	public void resetCurrent() {
-		loadedDocuments = initialDocumentscount;
-		bytesLoadedPerSecond = 0.0d;
-		documentsLoadedPerSecond = 0;
-		salesPricePerSecond = 0.0d;
+		currentTime = System.nanoTime();
+		currentDocuments = currentBytes = 0;
+		currentSalesPrice = 0.0d;
+		inFlightBatches = 0;
+		currentQueries = currentReadDocuments = 0;
+		currentUpdates = 0;
+		updateLatency.reset();
+		readLatency.reset();
+		for (Histogram histogram : queryLatencies) {
+			histogram.reset();
+		}
+		insertLatency.reset();
+		commitLatency.reset();
+		responseTime.reset();
 	}
 
 	public void resetComputed() {
@@ -59,32 +125,226 @@ public class MetricsDisplayer {
 	}
 
 	public void addMetrics(Metrics metrics) {
-		loadedDocuments += metrics.getTotalLoadedDocuments();
-		bytesLoadedPerSecond += metrics.getBytesSentPerMs();
-		documentsLoadedPerSecond += metrics.getDocumentsLoadedPerMs();
-		salesPricePerSecond += metrics.getSalesPricePerMs();
+		metrics.read(snapshot);
+		if (metrics.isInFlight()) {
+			inFlightBatches++;
+		}
+		addTotals(snapshot.loadedDocuments, snapshot.bytesSent, snapshot.salesPrice,
+				metrics.getInsertLatencyInterval(), metrics.getCommitLatencyInterval(), metrics.getResponseTimeInterval());
+		currentUpdates += snapshot.updatedDocuments;
+		updateLatency.add(metrics.getUpdateLatencyInterval());
+		final long commitTime = metrics.getFirstCommitTime();
+		if (commitTime != 0L && (firstCommitTime == 0L || commitTime - firstCommitTime < 0L)) {
+			firstCommitTime = commitTime;
+		}
+	}
+
+	/**
+	 * Adds the totals of one source of metrics (a generator, or a whole loader for the coordinator) and the latencies
+	 * it recorded since the previous tick.
+	 */
+	public void addTotals(long documents, long bytes, double salesPrice, Histogram insertLatencyInterval, Histogram commitLatencyInterval, Histogram responseTimeInterval) {
+		currentDocuments += documents;
+		currentBytes += bytes;
+		currentSalesPrice += salesPrice;
+		insertLatency.add(insertLatencyInterval);
+		commitLatency.add(commitLatencyInterval);
+		responseTime.add(responseTimeInterval);
+	}
+
+	/**
+	 * Adds the totals of one reader and the latencies of its queries since the previous tick.
+	 */
+	public void addReadMetrics(ReadMetrics metrics) {
+		readers = true;
+		currentQueries += metrics.getQueries();
+		currentReadDocuments += metrics.getDocuments();
+		for (PurchaseOrdersReader.Query query : PurchaseOrdersReader.Query.values()) {
+			final Histogram interval = metrics.getLatencyInterval(query);
+			queryLatencies[query.ordinal()].add(interval);
+			readLatency.add(interval);
+		}
+	}
+
+	/**
+	 * Tags the statistics documents with the identity of this loader.
+	 */
+	public void setClient(String clientId, int sessions) {
+		this.clientId = clientId;
+		this.sessions = sessions;
+	}
+
+	/**
+	 * Reports the updates apart from the inserts.
+	 */
+	public void setUpdateWorkload(UpdateWorkload updateWorkload) {
+		this.updateWorkload = updateWorkload;
+	}
+
+	/**
+	 * @param documentPool shared pool whose warm-up is reported (null if not the cache source)
+	 */
+	public void setDocumentPool(SharedDocumentPool documentPool) {
+		this.documentPool = documentPool;
+	}
+
+	public SharedDocumentPool getDocumentPool() {
+		return documentPool;
+	}
+
+	/**
+	 * @param connectionPool pool whose borrows are reported (null without database)
+	 */
+	public void setConnectionPool(ConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	public ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * @return time from the launch of the JVM to the end of the first commit, -1 if none yet
+	 */
+	public long getTimeToFirstCommitMillis() {
+		return firstCommitTime == 0L ? -1L : (firstCommitTime - launchTime) / 1_000_000L;
+	}
+
+	/**
+	 * Text displayed at the beginning of every line.
+	 */
+	public void setLabel(String label) {
+		this.label = label;
+	}
+
+	public long getCurrentDocuments() {
+		return currentDocuments;
+	}
+
+	public long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	public double getCurrentSalesPrice() {
+		return currentSalesPrice;
+	}
+
+	/**
+	 * @return the insert latencies of the last tick, only valid until the next one
+	 */
+	public Histogram getInsertLatency() {
+		return insertLatency;
+	}
+
+	/**
+	 * @return the commit latencies of the last tick, only valid until the next one
+	 */
+	public Histogram getCommitLatency() {
+		return commitLatency;
+	}
+
+	/**
+	 * @return the response times of the last tick, only valid until the next one
+	 */
+	public Histogram getResponseTime() {
+		return responseTime;
+	}
+
+	/**
+	 * Ends the warm-up: the summary only accounts for the documents and latencies reported after this tick.
+	 */
+	public void startSteadyState() {
+		steadyState = true;
+		steadyStartTime = currentTime;
+		steadyStartDocuments = currentDocuments;
+		steadyStartBytes = currentBytes;
+		steadyStartSalesPrice = currentSalesPrice;
+		steadyInsertLatency.reset();
+		steadyCommitLatency.reset();
+		steadyResponseTime.reset();
+		steadyStartQueries = currentQueries;
+		steadyStartUpdates = currentUpdates;
+		steadyUpdateLatency.reset();
+		steadyStartReadDocuments = currentReadDocuments;
+		for (Histogram histogram : steadyQueryLatencies) {
+			histogram.reset();
+		}
+	}
+
+	public boolean isSteadyState() {
+		return steadyState;
 	}
 
 	public void display() {
+		if (steadyState && currentTime > steadyStartTime) {
+			steadyInsertLatency.add(insertLatency);
+			steadyCommitLatency.add(commitLatency);
+			steadyResponseTime.add(responseTime);
+			for (int i = 0; i < queryLatencies.length; i++) {
+				steadyQueryLatencies[i].add(queryLatencies[i]);
+			}
+			steadyUpdateLatency.add(updateLatency);
+		}
+
 		if (resetComputedAfterNSeconds != -1 && count >= resetComputedAfterNSeconds) {
 			resetComputed();
 		}
 
 		count++;
 
+		computeRates();
 		computeDetailedMetrics();
 
-		System.out.print("\r                                                                        ");
+		System.out.print(CLEAR_LINE);
 		if (false && documentsLoadedPerSecond < 0.05d) {
 			System.out.printf(Locale.US, "\rLoaded %,d POs...", loadedDocuments);
 		}
 		else {
-			System.out.printf(Locale.US, "\rLoaded %,d POs for $ %,.2f /s at %,d PO/s (%,.2f MB/s)",
+			System.out.printf(Locale.US, "\r%sLoaded %,d POs for $ %,.2f /s at %,d PO/s (%,.2f MB/s)",
+					label,
 					loadedDocuments,
 					1000d * salesPricePerSecond,
 					(long)Math.ceil(1000d * documentsLoadedPerSecond),
 					1000d * bytesLoadedPerSecond / (1024d * 1024d));
 
+			if (rateScheduler != null) {
+				System.out.printf(Locale.US, " of %,d target, backlog %,d POs", rateScheduler.getTargetRate(), rateScheduler.getBacklog());
+			}
+
+			if (batchSizeController != null) {
+				System.out.printf(Locale.US, " | batch %,d", batchSizeController.getBatchSize());
+			}
+
+			if (insertLatency.getTotalCount() > 0) {
+				System.out.printf(Locale.US, " | p50/p99/p99.9/max ms insert %s commit %s",
+						formatPercentiles(insertLatency), formatPercentiles(commitLatency));
+				if (rateScheduler != null) {
+					System.out.printf(Locale.US, " response %s", formatPercentiles(responseTime));
+				}
+			}
+
+			if (updateWorkload != null) {
+				System.out.printf(Locale.US, " | updates %,d /s", (long) Math.ceil(1000d * updatesPerSecond));
+				if (updateLatency.getTotalCount() > 0) {
+					System.out.printf(Locale.US, " p50/p99/p99.9/max ms %s", formatPercentiles(updateLatency));
+				}
+			}
+
+			if (readers) {
+				System.out.printf(Locale.US, " | reads %,d q/s", (long) Math.ceil(1000d * queriesPerSecond));
+				if (readLatency.getTotalCount() > 0) {
+					System.out.printf(Locale.US, " p50/p99/p99.9/max ms %s", formatPercentiles(readLatency));
+				}
+			}
+
+			if (documentPool != null && !documentPool.isComplete()) {
+				System.out.printf(Locale.US, documentPool.getFailure() != null ? " | pool failed at %.0f%%" : " | pool %.0f%% ready",
+						100d * documentPool.getReadyDocuments() / documentPool.size());
+			}
+			if (connectionPool != null && connectionPool.getWaitingThreads() > 0) {
+				System.out.printf(Locale.US, " | %d waiting for a connection", connectionPool.getWaitingThreads());
+			}
+
 			/*
 			System.out.printf(Locale.US, " | $ %,.2f/%,.2f/%,.2f /s at %,d/%,d/%,d PO/s (%,.2f/%,.2f/%,.2f MB/s)",
 					1000d * minP, 1000d * avgP, 1000d * maxP,
@@ -93,22 +353,9 @@ public class MetricsDisplayer {
 
 			 */
 
-			try {
-				try (Connection c = pds.getConnection()) {
-					c.setAutoCommit(true);
-
-					final Properties props = new Properties();
-					props.put("oracle.soda.sharedMetadataCache", "true");
-					props.put("oracle.soda.localMetadataCache", "true");
-
-					final OracleRDBMSClient cl = new OracleRDBMSClient(props);
-					final OracleDatabase db = cl.getDatabase(c);
-					OracleCollection collection = db.openCollection("statistics");
-
-					if(collection == null) {
-						collection = db.admin().createCollection("statistics");
-					}
-
+			// no database when writing files
+			if (statisticsWriter != null) {
+				try {
 					out.reset();
 					OracleJsonGenerator gen = factory.createJsonBinaryGenerator(out);
 					final Instant now = Instant.now();
@@ -116,24 +363,346 @@ public class MetricsDisplayer {
 
 					gen.write("time", now.atOffset(ZoneOffset.UTC));
 					gen.write("collection", collectionName);
+					writeClient(gen);
+					writeDistributions(gen);
 					gen.write("total", factory.createValue(new NUMBER(loadedDocuments)));
 					gen.write("dollarPerSecond", factory.createValue(new NUMBER(1000d * salesPricePerSecond)));
 					gen.write("poPerSecond", factory.createValue(new NUMBER((long)Math.ceil(1000d * documentsLoadedPerSecond))));
 					gen.write("megaBytesPerSecond", factory.createValue(new NUMBER(1000d * bytesLoadedPerSecond / (1024d * 1024d))));
+					if (batchSizeController != null) {
+						gen.write("batchSize", factory.createValue(new NUMBER(batchSizeController.getBatchSize())));
+					}
+					if (rateScheduler != null) {
+						gen.write("targetPoPerSecond", factory.createValue(new NUMBER(rateScheduler.getTargetRate())));
+						gen.write("backlog", factory.createValue(new NUMBER(rateScheduler.getBacklog())));
+					}
+					if (insertLatency.getTotalCount() > 0) {
+						writePercentiles(gen, "insertLatencyMs", insertLatency);
+						writePercentiles(gen, "commitLatencyMs", commitLatency);
+						if (rateScheduler != null) {
+							writePercentiles(gen, "responseTimeMs", responseTime);
+						}
+					}
+					if (updateWorkload != null) {
+						gen.write("updatesPerSecond", factory.createValue(new NUMBER(1000d * updatesPerSecond)));
+						if (updateLatency.getTotalCount() > 0) {
+							writePercentiles(gen, "updateLatencyMs", updateLatency);
+						}
+					}
+					if (readers) {
+						gen.write("queriesPerSecond", factory.createValue(new NUMBER(1000d * queriesPerSecond)));
+						if (readLatency.getTotalCount() > 0) {
+							writePercentiles(gen, "readLatencyMs", readLatency);
+						}
+					}
 
 					gen.writeEnd(); // }
 
 					gen.close();
 
-					collection.insertAndGet(db.createDocumentFrom(out.toByteArray()));
+					// persisted in the background, the sample is dropped rather than delaying the next one
+					statisticsWriter.publish(out.toByteArray());
+				} catch(SQLException e) {
+					e.printStackTrace();
 				}
-			} catch(SQLException | OracleException e) {
-				e.printStackTrace();
 			}
 		}
 		System.out.flush();
 	}
 
+	/**
+	 * @return purchase orders per second during the last tick
+	 */
+	public double getDocumentsPerSecond() {
+		return 1000d * documentsLoadedPerSecond;
+	}
+
+	public double getBytesPerSecond() {
+		return 1000d * bytesLoadedPerSecond;
+	}
+
+	public double getSalesPricePerSecond() {
+		return 1000d * salesPricePerSecond;
+	}
+
+	public boolean hasUpdates() {
+		return updateWorkload != null;
+	}
+
+	public long getCurrentUpdates() {
+		return currentUpdates;
+	}
+
+	public double getUpdatesPerSecond() {
+		return 1000d * updatesPerSecond;
+	}
+
+	/**
+	 * @return the update batch latencies of the last tick, only valid until the next one
+	 */
+	public Histogram getUpdateLatency() {
+		return updateLatency;
+	}
+
+	public boolean hasReaders() {
+		return readers;
+	}
+
+	public long getCurrentQueries() {
+		return currentQueries;
+	}
+
+	public double getQueriesPerSecond() {
+		return 1000d * queriesPerSecond;
+	}
+
+	/**
+	 * @return the latencies of all the queries of the last tick, only valid until the next one
+	 */
+	public Histogram getReadLatency() {
+		return readLatency;
+	}
+
+	/**
+	 * @return batches being inserted or committed at the last tick
+	 */
+	public int getInFlightBatches() {
+		return inFlightBatches;
+	}
+
+	/**
+	 * @return p99 time to insert and commit a batch during the last tick in microseconds (-1 if no batch completed)
+	 */
+	public long getBatchLatencyP99() {
+		if (insertLatency.getTotalCount() == 0) {
+			return -1L;
+		}
+		return insertLatency.getValueAtPercentile(99d) + commitLatency.getValueAtPercentile(99d);
+	}
+
+	/**
+	 * Prints the totals of the run and the steady state figures (warm-up excluded), and persists them as a summary
+	 * document. Must be called after the last tick.
+	 */
+	public void displaySummary(long warmupSeconds) {
+		final double runSeconds = (currentTime - runStartTime) / 1_000_000_000d;
+		final double steadySeconds = (currentTime - steadyStartTime) / 1_000_000_000d;
+		final long steadyDocuments = currentDocuments - steadyStartDocuments;
+		final double steadyPOPerSecond = steadyState && steadySeconds > 0d ? steadyDocuments / steadySeconds : 0d;
+		final double steadyMBPerSecond = steadyState && steadySeconds > 0d ? (currentBytes - steadyStartBytes) / steadySeconds / (1024d * 1024d) : 0d;
+		final double steadyDollarPerSecond = steadyState && steadySeconds > 0d ? (currentSalesPrice - steadyStartSalesPrice) / steadySeconds : 0d;
+
+		System.out.printf(Locale.US, "Summary: %,d POs loaded in %,.1f s (%,.2f MB)%n",
+				currentDocuments, runSeconds, currentBytes / (1024d * 1024d));
+		if (firstCommitTime != 0L) {
+			System.out.printf(Locale.US, "Time to first commit: %,d ms after launch%n", getTimeToFirstCommitMillis());
+		}
+		if (documentPool != null) {
+			if (documentPool.isComplete()) {
+				System.out.printf(Locale.US, "Pool warm-up: %,d documents (%,.2f MB) built in %,d ms, first ones ready in %,d ms%n",
+						documentPool.size(), documentPool.getBytes() / (1024d * 1024d), documentPool.getWarmupMillis(), documentPool.getFirstReadyMillis());
+			}
+			else {
+				System.out.printf(Locale.US, "Pool warm-up: not complete, %,d of %,d documents built%s%n", documentPool.getReadyDocuments(), documentPool.size(),
+						documentPool.getFailure() != null ? ", failed: " + documentPool.getFailure() : "");
+			}
+		}
+		if (connectionPool != null) {
+			System.out.printf(Locale.US, "Connections (%s): %,d borrowed, %,d failed, %,.1f ms waited in total, borrow latencies p50/p99/p99.9/max ms: %s%n",
+					connectionPool, connectionPool.getBorrows(), connectionPool.getBorrowFailures(), connectionPool.getWaitMillis(), formatPercentiles(connectionPool.getBorrowLatency()));
+		}
+		if (steadyState && steadySeconds > 0d) {
+			System.out.printf(Locale.US, "Steady state (%,d s warm-up excluded): %,d POs in %,.1f s at %,.0f PO/s (%,.2f MB/s) for $ %,.2f /s%n",
+					warmupSeconds, steadyDocuments, steadySeconds, steadyPOPerSecond, steadyMBPerSecond, steadyDollarPerSecond);
+			if (rateScheduler != null) {
+				System.out.printf(Locale.US, "Target rate: %,d PO/s, achieved %.1f%%, backlog at the end %,d POs%n",
+						rateScheduler.getTargetRate(), 100d * steadyPOPerSecond / rateScheduler.getTargetRate(), rateScheduler.getBacklog());
+			}
+			if (steadyInsertLatency.getTotalCount() > 0) {
+				System.out.printf(Locale.US, "Latencies p50/p99/p99.9/max ms: insert %s commit %s%n",
+						formatPercentiles(steadyInsertLatency), formatPercentiles(steadyCommitLatency));
+				if (rateScheduler != null) {
+					System.out.printf(Locale.US, "Response time from the intended start p50/p99/p99.9/max ms: %s%n", formatPercentiles(steadyResponseTime));
+				}
+			}
+			if (updateWorkload != null) {
+				System.out.printf(Locale.US, "Updates (%s, %.3f per insert): %,d documents at %,.0f /s%n", updateWorkload.getMode().name().toLowerCase(),
+						updateWorkload.getUpdatesPerInsert(), currentUpdates - steadyStartUpdates, (currentUpdates - steadyStartUpdates) / steadySeconds);
+				if (steadyUpdateLatency.getTotalCount() > 0) {
+					System.out.printf(Locale.US, "Update batch latencies p50/p99/p99.9/max ms: %s%n", formatPercentiles(steadyUpdateLatency));
+				}
+			}
+			if (readers) {
+				System.out.printf(Locale.US, "Reads: %,d queries at %,.0f q/s (%,.0f documents/s)%n", currentQueries - steadyStartQueries,
+						(currentQueries - steadyStartQueries) / steadySeconds, (currentReadDocuments - steadyStartReadDocuments) / steadySeconds);
+				for (PurchaseOrdersReader.Query query : PurchaseOrdersReader.Query.values()) {
+					final Histogram histogram = steadyQueryLatencies[query.ordinal()];
+					if (histogram.getTotalCount() > 0) {
+						System.out.printf(Locale.US, "  %-12s %,10d queries, p50/p99/p99.9/max ms: %s%n", query.label, histogram.getTotalCount(), formatPercentiles(histogram));
+					}
+				}
+			}
+		}
+		else {
+			System.out.println("Steady state: not reached, the run ended during the warm-up");
+		}
+
+		if (statisticsWriter != null) {
+			try {
+				out.reset();
+				OracleJsonGenerator gen = factory.createJsonBinaryGenerator(out);
+				gen.writeStartObject(); // {
+
+				gen.write("time", Instant.now().atOffset(ZoneOffset.UTC));
+				gen.write("collection", collectionName);
+				gen.write("type", "summary");
+				writeClient(gen);
+				writeDistributions(gen);
+				gen.write("total", factory.createValue(new NUMBER(currentDocuments)));
+				gen.write("durationSeconds", factory.createValue(new NUMBER(runSeconds)));
+				gen.write("warmupSeconds", factory.createValue(new NUMBER(warmupSeconds)));
+				if (firstCommitTime != 0L) {
+					gen.write("timeToFirstCommitMs", factory.createValue(new NUMBER(getTimeToFirstCommitMillis())));
+				}
+				if (documentPool != null && documentPool.isComplete()) {
+					gen.write("poolWarmupMs", factory.createValue(new NUMBER(documentPool.getWarmupMillis())));
+				}
+				if (connectionPool != null) {
+					gen.writeStartObject("connectionPool");
+					gen.write("backend", connectionPool.getBackend().name().toLowerCase());
+					gen.write("size", factory.createValue(new NUMBER(connectionPool.getSize())));
+					gen.write("borrows", factory.createValue(new NUMBER(connectionPool.getBorrows())));
+					gen.write("borrowFailures", factory.createValue(new NUMBER(connectionPool.getBorrowFailures())));
+					gen.write("waitMs", factory.createValue(new NUMBER(connectionPool.getWaitMillis())));
+					writePercentiles(gen, "borrowLatencyMs", connectionPool.getBorrowLatency());
+					gen.writeEnd();
+				}
+				if (batchSizeController != null) {
+					gen.write("batchSize", factory.createValue(new NUMBER(batchSizeController.getBatchSize())));
+				}
+				if (steadyState && steadySeconds > 0d) {
+					gen.write("steadyStateSeconds", factory.createValue(new NUMBER(steadySeconds)));
+					gen.write("dollarPerSecond", factory.createValue(new NUMBER(steadyDollarPerSecond)));
+					gen.write("poPerSecond", factory.createValue(new NUMBER(steadyPOPerSecond)));
+					gen.write("megaBytesPerSecond", factory.createValue(new NUMBER(steadyMBPerSecond)));
+					if (rateScheduler != null) {
+						gen.write("targetPoPerSecond", factory.createValue(new NUMBER(rateScheduler.getTargetRate())));
+					}
+					if (steadyInsertLatency.getTotalCount() > 0) {
+						writePercentiles(gen, "insertLatencyMs", steadyInsertLatency);
+						writePercentiles(gen, "commitLatencyMs", steadyCommitLatency);
+						if (rateScheduler != null) {
+							writePercentiles(gen, "responseTimeMs", steadyResponseTime);
+						}
+					}
+					if (updateWorkload != null) {
+						gen.write("updateMode", updateWorkload.getMode().name().toLowerCase());
+						gen.write("updatesPerInsert", factory.createValue(new NUMBER(updateWorkload.getUpdatesPerInsert())));
+						gen.write("updatesPerSecond", factory.createValue(new NUMBER((currentUpdates - steadyStartUpdates) / steadySeconds)));
+						if (steadyUpdateLatency.getTotalCount() > 0) {
+							writePercentiles(gen, "updateLatencyMs", steadyUpdateLatency);
+						}
+					}
+					if (readers) {
+						gen.write("queriesPerSecond", factory.createValue(new NUMBER((currentQueries - steadyStartQueries) / steadySeconds)));
+						gen.writeStartObject("readLatencyMs");
+						for (PurchaseOrdersReader.Query query : PurchaseOrdersReader.Query.values()) {
+							if (steadyQueryLatencies[query.ordinal()].getTotalCount() > 0) {
+								writePercentiles(gen, query.label, steadyQueryLatencies[query.ordinal()]);
+							}
+						}
+						gen.writeEnd();
+					}
+				}
+
+				gen.writeEnd(); // }
+
+				gen.close();
+
+				statisticsWriter.publish(out.toByteArray(), 5000L);
+			} catch(SQLException e) {
+				e.printStackTrace();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void writeClient(OracleJsonGenerator gen) {
+		if (clientId != null) {
+			gen.write("client", clientId);
+			gen.write("sessions", factory.createValue(new NUMBER(sessions)));
+		}
+	}
+
+	/**
+	 * Records the skewed picks, so that runs with different hot spots are not compared blindly.
+	 */
+	private void writeDistributions(OracleJsonGenerator gen) {
+		boolean skewed = false;
+		for (MyRandom.Category category : MyRandom.Category.values()) {
+			final Distribution distribution = MyRandom.getDistribution(category);
+			if (distribution != null) {
+				if (!skewed) {
+					gen.writeStartObject("distributions");
+					skewed = true;
+				}
+				gen.write(category.label, distribution.toString());
+			}
+		}
+		if (skewed) {
+			gen.writeEnd();
+		}
+	}
+
+	private static Histogram[] newHistograms() {
+		final Histogram[] histograms = new Histogram[PurchaseOrdersReader.Query.values().length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new Histogram(3);
+		}
+		return histograms;
+	}
+
+	private static String formatPercentiles(Histogram histogram) {
+		return String.format(Locale.US, "%.1f/%.1f/%.1f/%.1f",
+				histogram.getValueAtPercentile(50d) / 1000d,
+				histogram.getValueAtPercentile(99d) / 1000d,
+				histogram.getValueAtPercentile(99.9d) / 1000d,
+				histogram.getMaxValue() / 1000d);
+	}
+
+	private void writePercentiles(OracleJsonGenerator gen, String name, Histogram histogram) throws SQLException {
+		gen.writeStartObject(name);
+		gen.write("p50", factory.createValue(new NUMBER(histogram.getValueAtPercentile(50d) / 1000d)));
+		gen.write("p99", factory.createValue(new NUMBER(histogram.getValueAtPercentile(99d) / 1000d)));
+		gen.write("p999", factory.createValue(new NUMBER(histogram.getValueAtPercentile(99.9d) / 1000d)));
+		gen.write("max", factory.createValue(new NUMBER(histogram.getMaxValue() / 1000d)));
+		gen.writeEnd();
+	}
+
+	/**
+	 * Rates (per ms) over the elapsed time between the previous tick and this one.
+	 */
+	private void computeRates() {
+		final double durationInMs = Math.max(1L, currentTime - previousTime) / 1_000_000d;
+
+		loadedDocuments = initialDocumentscount + currentDocuments;
+		documentsLoadedPerSecond = (currentDocuments - previousDocuments) / durationInMs;
+		bytesLoadedPerSecond = (currentBytes - previousBytes) / durationInMs;
+		salesPricePerSecond = (currentSalesPrice - previousSalesPrice) / durationInMs;
+
+		previousTime = currentTime;
+		previousDocuments = currentDocuments;
+		previousBytes = currentBytes;
+		previousSalesPrice = currentSalesPrice;
+
+		queriesPerSecond = (currentQueries - previousQueries) / durationInMs;
+		previousQueries = currentQueries;
+
+		updatesPerSecond = (currentUpdates - previousUpdates) / durationInMs;
+		previousUpdates = currentUpdates;
+	}
+
 	private void computeDetailedMetrics() {
 		minP = Math.min(minP, salesPricePerSecond);
 		maxP = Math.max(maxP, salesPricePerSecond);
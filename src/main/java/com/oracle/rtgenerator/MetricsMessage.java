@@ -0,0 +1,105 @@
+package com.oracle.rtgenerator;
+
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+
+/**
+ * Metrics of one loader for one tick, as exchanged between the loaders and the coordinator: the totals since the
+ * loader started (a lost message only delays the counts) and the latencies of the tick (HdrHistogram compressed
+ * encoding).
+ */
+public class MetricsMessage {
+	private static final int MAGIC = 0x504F4D32; // POM2
+
+	// leaves room for the histograms in a single datagram
+	static final int MAX_SIZE = 60 * 1024;
+
+	String clientId;
+	// random per process, tells a restarted loader reusing its client id from the previous run
+	long runId;
+	int sessions;
+	long sequence;
+	long documents;
+	long bytes;
+	double salesPrice;
+	Histogram insertLatency;
+	Histogram commitLatency;
+	Histogram responseTime;
+
+	/**
+	 * @return false if the message doesn't fit (e.g. extremely wide histograms), nothing is then written
+	 */
+	boolean encode(ByteBuffer target) {
+		final int start = target.position();
+		try {
+			final byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+			target.putInt(MAGIC);
+			target.putShort((short) id.length);
+			target.put(id);
+			target.putLong(runId);
+			target.putInt(sessions);
+			target.putLong(sequence);
+			target.putLong(documents);
+			target.putLong(bytes);
+			target.putDouble(salesPrice);
+			encode(insertLatency, target);
+			encode(commitLatency, target);
+			encode(responseTime, target);
+			return true;
+		} catch (RuntimeException e) {
+			// BufferOverflowException, IndexOutOfBoundsException from the histogram encoder...
+			target.position(start);
+			return false;
+		}
+	}
+
+	private static void encode(Histogram histogram, ByteBuffer target) {
+		if (histogram.getTotalCount() == 0) {
+			target.putInt(0);
+			return;
+		}
+		final int lengthPosition = target.position();
+		target.putInt(0);
+		final int length = histogram.encodeIntoCompressedByteBuffer(target);
+		target.putInt(lengthPosition, length);
+		target.position(lengthPosition + 4 + length);
+	}
+
+	/**
+	 * @return the decoded message, or null if it is not a metrics message
+	 */
+	static MetricsMessage decode(ByteBuffer source) throws DataFormatException {
+		if (source.remaining() < 4 || source.getInt() != MAGIC) {
+			return null;
+		}
+
+		final MetricsMessage message = new MetricsMessage();
+		final byte[] id = new byte[source.getShort()];
+		source.get(id);
+		message.clientId = new String(id, StandardCharsets.UTF_8);
+		message.runId = source.getLong();
+		message.sessions = source.getInt();
+		message.sequence = source.getLong();
+		message.documents = source.getLong();
+		message.bytes = source.getLong();
+		message.salesPrice = source.getDouble();
+		message.insertLatency = decodeHistogram(source);
+		message.commitLatency = decodeHistogram(source);
+		message.responseTime = decodeHistogram(source);
+		return message;
+	}
+
+	private static Histogram decodeHistogram(ByteBuffer source) throws DataFormatException {
+		final int length = source.getInt();
+		if (length == 0) {
+			return new Histogram(3);
+		}
+		final int start = source.position();
+		final Histogram histogram = Histogram.decodeFromCompressedByteBuffer(source, 0);
+		source.position(start + length);
+		return histogram;
+	}
+}
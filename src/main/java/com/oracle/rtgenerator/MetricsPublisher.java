@@ -0,0 +1,79 @@
+package com.oracle.rtgenerator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends the metrics of this loader to a coordinator once per tick, as a single UDP datagram. Sending never blocks the
+ * tick: a lost datagram only delays the totals and loses the latencies of one tick.
+ */
+public class MetricsPublisher implements AutoCloseable {
+	private final DatagramChannel channel;
+	private final InetSocketAddress coordinator;
+	private final MetricsMessage message = new MetricsMessage();
+	private final ByteBuffer buffer = ByteBuffer.allocate(MetricsMessage.MAX_SIZE);
+
+	/**
+	 * @param coordinator host:port of the coordinator
+	 */
+	public MetricsPublisher(String coordinator, String clientId, int sessions) throws IOException {
+		final int separator = coordinator.lastIndexOf(':');
+		if (separator == -1) {
+			throw new IllegalArgumentException("Coordinator address must be host:port");
+		}
+		this.coordinator = new InetSocketAddress(coordinator.substring(0, separator), Integer.parseInt(coordinator.substring(separator + 1)));
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+
+		message.clientId = clientId;
+		message.runId = ThreadLocalRandom.current().nextLong();
+		message.sessions = sessions;
+	}
+
+	/**
+	 * @return the default identity of this loader: host name and process id
+	 */
+	public static String defaultClientId() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (IOException e) {
+			host = "localhost";
+		}
+		return host + "-" + ProcessHandle.current().pid();
+	}
+
+	/**
+	 * Publishes the totals and latencies of the tick just displayed.
+	 */
+	public void publish(MetricsDisplayer md) {
+		message.sequence++;
+		message.documents = md.getCurrentDocuments();
+		message.bytes = md.getCurrentBytes();
+		message.salesPrice = md.getCurrentSalesPrice();
+		message.insertLatency = md.getInsertLatency();
+		message.commitLatency = md.getCommitLatency();
+		message.responseTime = md.getResponseTime();
+
+		buffer.clear();
+		if (!message.encode(buffer)) {
+			return;
+		}
+		buffer.flip();
+
+		try {
+			channel.send(buffer, coordinator);
+		} catch (IOException e) {
+			// coordinator not started yet or gone, the next ticks will tell
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -1,106 +1,408 @@
 package com.oracle.rtgenerator;
 
-import com.github.javafaker.Address;
-import com.github.javafaker.Faker;
-import com.github.javafaker.PhoneNumber;
 import oracle.sql.NUMBER;
 import oracle.sql.json.OracleJsonFactory;
 import oracle.sql.json.OracleJsonValue;
 
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Map;
+import java.util.SplittableRandom;
 
+/**
+ * Random values for one thread. Either unseeded, or deterministic when a seed is given: every (node, stream) pair then
+ * gets its own independent sequence derived from the seed, so that identical options produce identical documents
+ * without any coordination between the threads nor the nodes.
+ */
 public class MyRandom {
-	private final java.util.concurrent.ThreadLocalRandom random = ThreadLocalRandom.current();
-	final static String[] firstNames;
-	final static String[] lastNames;
+	/**
+	 * Independent families of streams, each one indexed by the thread (or chunk) using it.
+	 */
+	public enum Stream {
+		SESSION, PRODUCER, POOL, READER, UPDATE
+	}
+
+	/**
+	 * Values whose picks can be skewed by a {@link Distribution}.
+	 */
+	public enum Category {
+		PRODUCTS("products"), CUSTOMERS("customers"), COST_CENTERS("cost-centers"), COUNTRIES("countries");
+
+		public final String label;
+
+		Category(String label) {
+			this.label = label;
+		}
+
+		public static Category fromLabel(String label) {
+			for (Category category : values()) {
+				if (category.label.equalsIgnoreCase(label)) {
+					return category;
+				}
+			}
+			throw new IllegalArgumentException("Unknown category: " + label);
+		}
+	}
+
+	// deterministic generation when set
+	public static Long SEED = null;
+	public static int NODE_ID = 0;
+	public static int NODE_COUNT = 1;
+
+	private final SplittableRandom random;
+	// stream of the values, null outside of the streams
+	private Stream stream;
+	private long streamIndex;
+	private boolean hasNextGaussian;
+	private double nextGaussian;
+	final static BinaryDictionary firstNames;
+	final static BinaryDictionary lastNames;
+	final static BinaryDictionary userSuffixes;
 	final static String[] specialInstructions;
 	final static String[] phoneTypes;
-	private final Faker faker = new Faker(Locale.US);
-	final static Product[] products;
+	final static String[] costCenters;
+	final static String[] countries;
+	final static BinaryDictionary streets;
+	final static BinaryDictionary phoneNumbers;
+	final static BinaryDictionary cellPhones;
+	final static City[] cities;
+	private final static BinaryDictionary productLines;
+	// parsed when first picked
+	private final static Product[] products;
+	private final static OracleJsonFactory FACTORY = new OracleJsonFactory();
+
+	private static boolean precompiledDictionaries = true;
+	private final static long dictionariesLoadNanos;
+
+	// skewed picks, null for the default distribution: uniform, except the best sellers of the products
+	private final static Distribution[] distributions = new Distribution[Category.values().length];
+	private static AliasTable productsTable;
+	private static AliasTable firstNamesTable;
+	private static AliasTable lastNamesTable;
+	private static AliasTable costCentersTable;
+	private static AliasTable countriesTable;
+
+	// size of the preformatted value tables, must be powers of 2
+	final static int STREETS = 1 << 15;
+	final static int PHONE_NUMBERS = 1 << 14;
 
 	static {
-		firstNames = initialize("first_names.txt");
-		lastNames = initialize("last_names.txt");
+		final long start = System.nanoTime();
+		final Map<String, BinaryDictionary> dictionaries = loadDictionaries();
+		firstNames = dictionaries.get(DictionaryCompiler.FIRST_NAMES);
+		lastNames = dictionaries.get(DictionaryCompiler.LAST_NAMES);
+		userSuffixes = dictionaries.get(DictionaryCompiler.USER_SUFFIXES);
 		specialInstructions = new String[]{"Surface Mail", "Next Day Air", "Courier", "Ground", "Air Mail", "Hand Carry", "Counter to Counter", "COD", "Expidite", "Priority Overnight"};
 		phoneTypes = new String[]{"Office", "Mobile","Home"};
-		products = initializeProducts("movies.csv");
+		costCenters = new String[]{"A10", "A20", "A30", "A40", "A50", "A60", "A70", "A80", "A90", "A100"};
+		countries = initializeCountries("country_taxes.csv");
+		streets = dictionaries.get(DictionaryCompiler.STREETS);
+		phoneNumbers = dictionaries.get(DictionaryCompiler.PHONE_NUMBERS);
+		cellPhones = dictionaries.get(DictionaryCompiler.CELL_PHONES);
+		cities = initializeCities("cities.csv");
+		productLines = dictionaries.get(DictionaryCompiler.PRODUCTS);
+		products = new Product[productLines.size()];
+		dictionariesLoadNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * @return the dictionaries precompiled by the build, or compiled from the text resources if missing (e.g. run from
+	 * an IDE without Maven)
+	 * @throws UncheckedIOException naming the dictionary that could not be read
+	 */
+	private static Map<String, BinaryDictionary> loadDictionaries() {
+		final Map<String, BinaryDictionary> d = new HashMap<>();
+		for (String name : DictionaryCompiler.NAMES) {
+			final BinaryDictionary dictionary;
+			try {
+				dictionary = BinaryDictionary.load(DictionaryCompiler.resource(name));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot load the precompiled dictionary " + name, e);
+			}
+			if (dictionary == null) {
+				precompiledDictionaries = false;
+				final Map<String, List<String>> compiled;
+				try {
+					compiled = DictionaryCompiler.compile(DictionaryCompiler.classPath());
+				} catch (IOException e) {
+					throw new UncheckedIOException("Precompiled dictionary " + name + " missing, compiling the text resources failed: " + e.getMessage(), e);
+				}
+				for (Map.Entry<String, List<String>> values : compiled.entrySet()) {
+					d.put(values.getKey(), BinaryDictionary.of(values.getValue()));
+				}
+				return d;
+			}
+			d.put(name, dictionary);
+		}
+		return d;
 	}
 
-	private static Product[] initializeProducts(String fileName) {
-		final List<Product> d = new ArrayList<>();
+	/**
+	 * @return true if the dictionaries were precompiled by the build, false if compiled from the text resources
+	 */
+	public static boolean areDictionariesPrecompiled() {
+		return precompiledDictionaries;
+	}
+
+	/**
+	 * @return the time taken to load the dictionaries and tables at startup, in milliseconds
+	 */
+	public static double getDictionariesLoadMillis() {
+		return dictionariesLoadNanos / 1_000_000d;
+	}
 
-		BufferedReader reader;
-		try {
-			reader = new BufferedReader(new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream(fileName), StandardCharsets.UTF_8));
+	/**
+	 * @throws UncheckedIOException naming the file that could not be read
+	 * @throws IllegalArgumentException naming the file and the line that could not be parsed
+	 */
+	private static City[] initializeCities(String fileName) {
+		final List<City> d = new ArrayList<>();
+
+		try (BufferedReader reader = openResource(fileName)) {
 			String line;
 			final OracleJsonFactory factory = new OracleJsonFactory();
 			while ((line = reader.readLine()) != null) {
-				d.add(Product.getInstance(line, factory));
+				try {
+					d.add(City.getInstance(line, factory));
+				} catch (SQLException | RuntimeException e) {
+					throw new IllegalArgumentException("Invalid city in " + fileName + ": " + line, e);
+				}
 			}
-			reader.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot read " + fileName, e);
 		}
 
-		return d.toArray(new Product[d.size()]);
+		return d.toArray(new City[d.size()]);
 	}
 
-	private static String[] initialize(String fileName) {
+	/**
+	 * @throws UncheckedIOException naming the file that could not be read
+	 * @throws IllegalArgumentException naming the file and the line that could not be parsed
+	 */
+	private static String[] initializeCountries(String fileName) {
 		final List<String> d = new ArrayList<>();
 
-		BufferedReader reader;
-		try {
-			reader = new BufferedReader(new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream(fileName), StandardCharsets.UTF_8));
-			String line;
+		try (BufferedReader reader = openResource(fileName)) {
+			// skip header
+			String line = reader.readLine();
 			while ((line = reader.readLine()) != null) {
-				d.add(String.format("%s%s", line.substring(0, 1).toUpperCase(), line.substring(1)));
+				// "country name",tax,
+				final int end = line.indexOf('"', 1);
+				if (!line.startsWith("\"") || end == -1) {
+					throw new IllegalArgumentException("Invalid country in " + fileName + ": " + line);
+				}
+				d.add(line.substring(1, end));
 			}
-			reader.close();
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException("Cannot read " + fileName, e);
 		}
 
 		return d.toArray(new String[d.size()]);
 	}
 
+	private static BufferedReader openResource(String fileName) throws FileNotFoundException {
+		final InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(fileName);
+		if (in == null) {
+			throw new FileNotFoundException("Resource " + fileName + " not found in the class path");
+		}
+		return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	public MyRandom() {
+		this(new SplittableRandom());
+	}
+
+	private MyRandom(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * @return the random values of a stream of this node, seeded if a seed is set
+	 */
+	public static MyRandom forStream(Stream stream, long index) {
+		final MyRandom random;
+		if (SEED == null) {
+			random = new MyRandom();
+		} else {
+			long seed = mix64(SEED + 0x9E3779B97F4A7C15L * (1 + NODE_ID));
+			seed = mix64(seed + 0x9E3779B97F4A7C15L * (1 + stream.ordinal()));
+			seed = mix64(seed + 0x9E3779B97F4A7C15L * (1 + index));
+			random = new MyRandom(new SplittableRandom(seed));
+		}
+		random.stream = stream;
+		random.streamIndex = index;
+		return random;
+	}
+
+	/**
+	 * @return the stream of these values, null unless they come from {@link #forStream(Stream, long)}
+	 */
+	public Stream getStream() {
+		return stream;
+	}
+
+	/**
+	 * @return the index of the stream of these values
+	 */
+	public long getStreamIndex() {
+		return streamIndex;
+	}
+
+	/**
+	 * Skews the picks of a category, before the threads generating documents start. The customers skew applies to
+	 * both their first and last names.
+	 */
+	public static void setDistribution(Category category, Distribution distribution) {
+		distributions[category.ordinal()] = distribution;
+		switch (category) {
+			case PRODUCTS:
+				productsTable = distribution == null ? null : distribution.table(products.length);
+				break;
+			case CUSTOMERS:
+				firstNamesTable = distribution == null ? null : distribution.table(firstNames.size());
+				lastNamesTable = distribution == null ? null : distribution.table(lastNames.size());
+				break;
+			case COST_CENTERS:
+				costCentersTable = distribution == null ? null : distribution.table(costCenters.length);
+				break;
+			case COUNTRIES:
+			default:
+				countriesTable = distribution == null ? null : distribution.table(countries.length);
+				break;
+		}
+	}
+
+	/**
+	 * @return the distribution set for the category, null for the default one
+	 */
+	public static Distribution getDistribution(Category category) {
+		return distributions[category.ordinal()];
+	}
+
+	public static boolean isDeterministic() {
+		return SEED != null;
+	}
+
+	/**
+	 * @return an identifier of the given thread unique across all the nodes
+	 */
+	public static int globalThreadId(int localThreadId) {
+		return localThreadId * NODE_COUNT + NODE_ID;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	public String randomFirstName() {
-		return firstNames[random.nextInt(firstNames.length)];
+		return firstNames.get(randomFirstNameIndex());
+	}
+
+	public int randomFirstNameIndex() {
+		return firstNamesTable == null ? random.nextInt(firstNames.size()) : firstNamesTable.sample(this);
 	}
 
 	public String randomLastName() {
-		return lastNames[random.nextInt(lastNames.length)];
+		return lastNames.get(randomLastNameIndex());
+	}
+
+	/**
+	 * @return an index in {@link #lastNames} and {@link #userSuffixes}
+	 */
+	public int randomLastNameIndex() {
+		return lastNamesTable == null ? random.nextInt(lastNames.size()) : lastNamesTable.sample(this);
 	}
 
 	public int nextGaussian(double multiplier) {
-		return Math.abs((int)Math.round(multiplier * random.nextGaussian()));
+		return Math.abs((int)Math.round(multiplier * gaussian()));
+	}
+
+	/**
+	 * Marsaglia polar method, as {@link java.util.Random#nextGaussian()} (not provided by SplittableRandom).
+	 */
+	private double gaussian() {
+		if (hasNextGaussian) {
+			hasNextGaussian = false;
+			return nextGaussian;
+		}
+
+		double v1, v2, s;
+		do {
+			v1 = 2 * random.nextDouble() - 1;
+			v2 = 2 * random.nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+
+		final double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		nextGaussian = v2 * multiplier;
+		hasNextGaussian = true;
+		return v1 * multiplier;
 	}
 
 	public int nextInt(int max) {
 		return random.nextInt(0,max);
 	}
 
+	/**
+	 * @return a value between 0 (inclusive) and 1 (exclusive)
+	 */
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
 	public String randomSpecialInstruction() {
 		return specialInstructions[random.nextInt(specialInstructions.length)];
 	}
 
-	public Address randomAddress() {
-		return faker.address();
+	public City randomCity() {
+		return cities[random.nextInt(cities.length)];
+	}
+
+	public String randomStreet() {
+		return streets.get(random.nextInt(STREETS));
+	}
+
+	public String randomZipCode(City city) {
+		return city.zipCodes[random.nextInt(city.zipCodes.length)];
+	}
+
+	public String randomCountry() {
+		return countries[randomCountryIndex()];
+	}
+
+	public int randomCountryIndex() {
+		return countriesTable == null ? random.nextInt(countries.length) : countriesTable.sample(this);
+	}
+
+	public String randomCostCenter() {
+		return costCenters[randomCostCenterIndex()];
+	}
+
+	public int randomCostCenterIndex() {
+		return costCentersTable == null ? random.nextInt(costCenters.length) : costCentersTable.sample(this);
 	}
 
 	public String randomPhoneType() {
 		return phoneTypes[random.nextInt(phoneTypes.length)];
 	}
 
-	public PhoneNumber randomPhoneNumber() {
-		return faker.phoneNumber();
+	public String randomPhoneNumber() {
+		return phoneNumbers.get(random.nextInt(PHONE_NUMBERS));
+	}
+
+	public String randomCellPhone() {
+		return cellPhones.get(random.nextInt(PHONE_NUMBERS));
 	}
 
 	public boolean randomBoolean() {
@@ -108,6 +410,40 @@ public class MyRandom {
 	}
 
 	public Product randomProduct() {
+		return product(randomProductIndex());
+	}
+
+	/**
+	 * @return the product of the given index, parsed the first time
+	 */
+	static Product product(int index) {
+		Product product = products[index];
+		if (product == null) {
+			try {
+				product = Product.getInstance(productLines.get(index), FACTORY);
+			} catch (SQLException e) {
+				throw new IllegalStateException("Invalid product " + productLines.get(index), e);
+			}
+			products[index] = product;
+		}
+		return product;
+	}
+
+	static int productCount() {
+		return products.length;
+	}
+
+	/**
+	 * @return an index of {@link #product(int)}, by default half of the picks going to the 5 best sellers
+	 */
+	public int randomProductIndex() {
+		if (productsTable != null) {
+			return productsTable.sample(this);
+		}
+		if (distributions[Category.PRODUCTS.ordinal()] != null) {
+			return random.nextInt(products.length);
+		}
+
 		int productId = random.nextInt(100);
 		if(productId < 50) {
 			productId = random.nextInt(5);
@@ -118,7 +454,7 @@ public class MyRandom {
 			productId = random.nextInt(products.length);
 		}
 
-		return products[productId];
+		return productId;
 	}
 
 	public static class Product {
@@ -143,4 +479,34 @@ public class MyRandom {
 					factory.createValue(new NUMBER( Long.parseLong(items[2]))));
 		}
 	}
+
+	public static class City {
+		public final String name;
+		public final String state;
+		public final String[] zipCodes;
+		public final OracleJsonValue longitude;
+		public final OracleJsonValue latitude;
+
+		public City(String name, String state, String[] zipCodes, OracleJsonValue longitude, OracleJsonValue latitude) {
+			this.name = name;
+			this.state = state;
+			this.zipCodes = zipCodes;
+			this.longitude = longitude;
+			this.latitude = latitude;
+		}
+
+		public static City getInstance(String line, OracleJsonFactory factory) throws SQLException {
+			// name;state;zip code prefix;latitude;longitude
+			final String[] items = line.split(";");
+
+			final String[] zipCodes = new String[20];
+			for (int i = 0; i < zipCodes.length; i++) {
+				zipCodes[i] = String.format("%s%02d", items[2], 1 + 5 * i);
+			}
+
+			return new City(items[0], items[1], zipCodes,
+					factory.createValue(new NUMBER(Double.parseDouble(items[4]))),
+					factory.createValue(new NUMBER(Double.parseDouble(items[3]))));
+		}
+	}
 }
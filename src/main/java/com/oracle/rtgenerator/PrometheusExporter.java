@@ -0,0 +1,163 @@
+package com.oracle.rtgenerator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Exposes the metrics of the loader at {@code http://<host>:<port>/metrics} in the Prometheus text format, without
+ * any database round trip.
+ * <p>
+ * The exposition is rendered once per displayer tick by the main thread and scrapes just return the latest one, so
+ * scraping never touches the generators. Latency histograms are cumulative since the start of the run, with fixed
+ * buckets in seconds.
+ */
+public class PrometheusExporter implements AutoCloseable {
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	// upper bounds of the histogram buckets in microseconds
+	private static final long[] BUCKETS = {500L, 1_000L, 2_500L, 5_000L, 10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+			1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L};
+	private static final String[] BUCKET_LABELS = new String[BUCKETS.length];
+
+	static {
+		for (int i = 0; i < BUCKETS.length; i++) {
+			BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKETS[i], 6).stripTrailingZeros().toPlainString();
+		}
+	}
+
+	private final HttpServer server;
+	private final Histogram insertLatency = new Histogram(3);
+	private final Histogram commitLatency = new Histogram(3);
+	private final Histogram responseTime = new Histogram(3);
+	private final Histogram readLatency = new Histogram(3);
+	private final Histogram updateLatency = new Histogram(3);
+	private final StringBuilder text = new StringBuilder(8192);
+	private volatile byte[] exposition = new byte[0];
+
+	public PrometheusExporter(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/metrics", this::handle);
+		server.start();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			final byte[] body = exposition;
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Renders the metrics of the last tick; must be called by a single thread, after {@link MetricsDisplayer#display()}.
+	 *
+	 * @param batchSizeController null when unknown
+	 * @param rateScheduler       null for a closed loop
+	 */
+	public void update(MetricsDisplayer md, BatchSizeController batchSizeController, RateScheduler rateScheduler) {
+		insertLatency.add(md.getInsertLatency());
+		commitLatency.add(md.getCommitLatency());
+		responseTime.add(md.getResponseTime());
+		readLatency.add(md.getReadLatency());
+		updateLatency.add(md.getUpdateLatency());
+
+		text.setLength(0);
+		metric("rtgenerator_documents_loaded_total", "counter", "Purchase orders loaded since the start", md.getCurrentDocuments());
+		metric("rtgenerator_bytes_loaded_total", "counter", "Bytes of documents loaded since the start", md.getCurrentBytes());
+		metric("rtgenerator_sales_price_total", "counter", "Sales price of the purchase orders loaded since the start in dollars", md.getCurrentSalesPrice());
+		metric("rtgenerator_documents_per_second", "gauge", "Purchase orders loaded per second during the last tick", md.getDocumentsPerSecond());
+		metric("rtgenerator_bytes_per_second", "gauge", "Bytes loaded per second during the last tick", md.getBytesPerSecond());
+		metric("rtgenerator_sales_price_per_second", "gauge", "Sales price loaded per second during the last tick in dollars", md.getSalesPricePerSecond());
+		metric("rtgenerator_in_flight_batches", "gauge", "Batches being inserted or committed", md.getInFlightBatches());
+		if (batchSizeController != null) {
+			metric("rtgenerator_batch_size", "gauge", "Documents per batch", batchSizeController.getBatchSize());
+		}
+		if (rateScheduler != null) {
+			metric("rtgenerator_target_documents_per_second", "gauge", "Open loop target rate", rateScheduler.getTargetRate());
+			metric("rtgenerator_backlog_documents", "gauge", "Open loop documents scheduled but not started yet", rateScheduler.getBacklog());
+		}
+		if (md.getTimeToFirstCommitMillis() >= 0L) {
+			metric("rtgenerator_time_to_first_commit_seconds", "gauge", "Time from the launch to the end of the first commit", md.getTimeToFirstCommitMillis() / 1000d);
+		}
+		final SharedDocumentPool pool = md.getDocumentPool();
+		if (pool != null) {
+			metric("rtgenerator_pool_ready_documents", "gauge", "Documents of the shared pool built so far", pool.getReadyDocuments());
+			if (pool.isComplete()) {
+				metric("rtgenerator_pool_warmup_seconds", "gauge", "Time to build the whole shared pool", pool.getWarmupMillis() / 1000d);
+			}
+		}
+		final ConnectionPool connectionPool = md.getConnectionPool();
+		if (connectionPool != null) {
+			metric("rtgenerator_connection_borrows_total", "counter", "Connections borrowed from the pool since the start", connectionPool.getBorrows());
+			metric("rtgenerator_connection_borrow_failures_total", "counter", "Connection borrows failed or timed out since the start", connectionPool.getBorrowFailures());
+			metric("rtgenerator_connection_wait_seconds_total", "counter", "Time spent waiting for a connection since the start", connectionPool.getWaitMillis() / 1000d);
+			metric("rtgenerator_connections_waiting", "gauge", "Threads waiting for a connection", connectionPool.getWaitingThreads());
+			histogram("rtgenerator_connection_borrow_latency_seconds", "Time to borrow one connection", connectionPool.getBorrowLatency());
+		}
+		histogram("rtgenerator_insert_latency_seconds", "Time to insert one batch", insertLatency);
+		histogram("rtgenerator_commit_latency_seconds", "Time to commit one batch", commitLatency);
+		if (rateScheduler != null) {
+			histogram("rtgenerator_response_time_seconds", "Time from the intended start of a batch to the end of its commit", responseTime);
+		}
+		if (md.hasUpdates()) {
+			metric("rtgenerator_documents_updated_total", "counter", "Documents updated since the start", md.getCurrentUpdates());
+			metric("rtgenerator_updates_per_second", "gauge", "Documents updated per second during the last tick", md.getUpdatesPerSecond());
+			histogram("rtgenerator_update_latency_seconds", "Time to update and commit one batch of updates", updateLatency);
+		}
+		if (md.hasReaders()) {
+			metric("rtgenerator_queries_total", "counter", "Queries run by the readers since the start", md.getCurrentQueries());
+			metric("rtgenerator_queries_per_second", "gauge", "Queries run per second during the last tick", md.getQueriesPerSecond());
+			histogram("rtgenerator_read_latency_seconds", "Time to run one query and fetch its documents", readLatency);
+		}
+
+		exposition = text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void header(String name, String type, String help) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private void metric(String name, String type, String help, long value) {
+		header(name, type, help);
+		text.append(name).append(' ').append(value).append('\n');
+	}
+
+	private void metric(String name, String type, String help, double value) {
+		header(name, type, help);
+		text.append(name).append(' ').append(String.format(Locale.US, "%.3f", value)).append('\n');
+	}
+
+	private void histogram(String name, String help, Histogram histogram) {
+		header(name, "histogram", help);
+		final long count = histogram.getTotalCount();
+		for (int i = 0; i < BUCKETS.length; i++) {
+			final long cumulative = count == 0 ? 0L : histogram.getCountBetweenValues(0L, BUCKETS[i]);
+			text.append(name).append("_bucket{le=\"").append(BUCKET_LABELS[i]).append("\"} ").append(cumulative).append('\n');
+		}
+		text.append(name).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+		text.append(name).append("_sum ").append(String.format(Locale.US, "%.6f", count == 0 ? 0d : histogram.getMean() * count / 1_000_000d)).append('\n');
+		text.append(name).append("_count ").append(count).append('\n');
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+}
@@ -0,0 +1,73 @@
+package com.oracle.rtgenerator;
+
+import oracle.sql.json.OracleJsonFactory;
+import oracle.sql.json.OracleJsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.time.Instant;
+
+/**
+ * Builds random documents as OSON (or JSON text) by running the compiled {@link DocumentTemplate}, purchase orders
+ * unless a custom template is set. Not thread safe: each thread producing documents owns its builder.
+ */
+public class PurchaseOrderBuilder {
+	// shape of the generated documents, compiled once and shared by all the builders
+	public static DocumentTemplate TEMPLATE = DocumentTemplate.purchaseOrder();
+
+	// deterministic mode: requestedAt derived from the number of documents generated
+	static final long LOGICAL_EPOCH_MILLI = Instant.parse("2021-01-01T00:00:00Z").toEpochMilli();
+
+	private final boolean json;
+	private final DocumentTemplate template;
+	private final DocumentTemplate.State state;
+
+	private final OracleJsonFactory factory = new OracleJsonFactory();
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	public PurchaseOrderBuilder() {
+		this(false);
+	}
+
+	/**
+	 * @param json generate JSON text documents instead of OSON
+	 */
+	public PurchaseOrderBuilder(boolean json) {
+		this(json, new MyRandom(), 0L);
+	}
+
+	/**
+	 * @param random        random values of the stream this builder generates
+	 * @param firstSequence logical time of the first document, in deterministic mode
+	 */
+	public PurchaseOrderBuilder(boolean json, MyRandom random, long firstSequence) {
+		this.json = json;
+		this.template = TEMPLATE;
+		this.state = template.newState(random, firstSequence);
+	}
+
+	public byte[] generatePurchaseOrder(final double[] amountsCache, final int index) throws SQLException {
+		return generatePurchaseOrder(amountsCache, index, false);
+	}
+
+	/**
+	 * Generates a purchase order whose reference and requested at time can later be patched to produce unique
+	 * documents without generating them again.
+	 */
+	public PurchaseOrderTemplate generatePurchaseOrderTemplate() throws SQLException {
+		final double[] amount = new double[1];
+		final byte[] osonData = generatePurchaseOrder(amount, 0, true);
+		return new PurchaseOrderTemplate(osonData, amount[0]);
+	}
+
+	private byte[] generatePurchaseOrder(final double[] amountsCache, final int index, final boolean template) throws SQLException {
+		out.reset();
+		final OracleJsonGenerator gen = json ? factory.createJsonTextGenerator(out) : factory.createJsonBinaryGenerator(out);
+
+		amountsCache[index] = this.template.write(state, gen, template);
+
+		gen.close();
+
+		return out.toByteArray();
+	}
+}
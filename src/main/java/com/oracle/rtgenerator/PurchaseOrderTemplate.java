@@ -0,0 +1,138 @@
+package com.oracle.rtgenerator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * A generated purchase order whose varying fields can be rewritten directly inside its OSON bytes.
+ * <p>
+ * The template is generated with a placeholder <code>requestedAt</code> timestamp and a <code>reference</code> ending
+ * with a fixed width sequence number. OSON stores both values with a fixed size (the UTC timestamp always uses the
+ * 11 bytes of the Oracle TIMESTAMP format and the reference string keeps its length), so producing a new unique document only requires
+ * overwriting a few bytes instead of running the whole generation again.
+ */
+public class PurchaseOrderTemplate {
+	static final Instant PLACEHOLDER_INSTANT = Instant.parse("1999-12-31T23:59:58.987654321Z");
+	static final String PLACEHOLDER_DATE = "19991231";
+	static final String PLACEHOLDER_SEQUENCE = "0000000000000000";
+
+	private static final byte[] PLACEHOLDER_TIMESTAMP = new byte[11];
+	private static final byte[] PLACEHOLDER_REFERENCE_SUFFIX = ("-" + PLACEHOLDER_DATE + "-" + PLACEHOLDER_SEQUENCE).getBytes(StandardCharsets.US_ASCII);
+
+	static {
+		encodeTimestamp(PLACEHOLDER_INSTANT.toEpochMilli(), PLACEHOLDER_INSTANT.getNano() % 1_000_000, PLACEHOLDER_TIMESTAMP, 0);
+	}
+
+	final byte[] oson;
+	final double amount;
+	final int referenceDateOffset;
+	final int referenceSequenceOffset;
+	final int requestedAtOffset;
+
+	public PurchaseOrderTemplate(byte[] oson, double amount) {
+		this.oson = oson;
+		this.amount = amount;
+
+		final int referenceSuffixOffset = indexOf(oson, PLACEHOLDER_REFERENCE_SUFFIX);
+		requestedAtOffset = indexOf(oson, PLACEHOLDER_TIMESTAMP);
+		if (referenceSuffixOffset == -1 || requestedAtOffset == -1) {
+			throw new IllegalStateException("Purchase order template placeholders not found");
+		}
+		referenceDateOffset = referenceSuffixOffset + 1;
+		referenceSequenceOffset = referenceDateOffset + PLACEHOLDER_DATE.length() + 1;
+	}
+
+	/**
+	 * Rewrites the template in place with the given reference sequence number and requested at time.
+	 *
+	 * @param sequence   unique number written as the last 16 digits of the reference
+	 * @param epochMilli requested at time
+	 * @param nanos      sub-millisecond part of the requested at time (0-999999)
+	 */
+	public void patch(long sequence, long epochMilli, int nanos) {
+		patch(oson, sequence, epochMilli, nanos);
+	}
+
+	/**
+	 * Same as {@link #patch(long, long, int)} but leaves the template untouched and returns a patched copy.
+	 */
+	public byte[] patchedCopy(long sequence, long epochMilli, int nanos) {
+		final byte[] copy = oson.clone();
+		patch(copy, sequence, epochMilli, nanos);
+		return copy;
+	}
+
+	private void patch(byte[] target, long sequence, long epochMilli, int nanos) {
+		patch(target, requestedAtOffset, referenceDateOffset, referenceSequenceOffset, sequence, epochMilli, nanos);
+	}
+
+	/**
+	 * Patches a copy of a template stored elsewhere (e.g. in the shared document pool) given its placeholder offsets.
+	 */
+	static void patch(byte[] target, int requestedAtOffset, int referenceDateOffset, int referenceSequenceOffset, long sequence, long epochMilli, int nanos) {
+		encodeTimestamp(epochMilli, nanos, target, requestedAtOffset);
+
+		// yyyyMMdd of the reference, taken from the timestamp just encoded
+		final int year = ((target[requestedAtOffset] & 0xFF) - 100) * 100 + (target[requestedAtOffset + 1] & 0xFF) - 100;
+		writeDigits(target, referenceDateOffset, 4, year);
+		writeDigits(target, referenceDateOffset + 4, 2, target[requestedAtOffset + 2]);
+		writeDigits(target, referenceDateOffset + 6, 2, target[requestedAtOffset + 3]);
+
+		writeDigits(target, referenceSequenceOffset, PLACEHOLDER_SEQUENCE.length(), sequence);
+	}
+
+	private static void writeDigits(byte[] target, int offset, int width, long value) {
+		for (int i = offset + width - 1; i >= offset; i--) {
+			target[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/**
+	 * Encodes an UTC time using the Oracle TIMESTAMP internal format: century + 100, year of century + 100, month,
+	 * day, hour + 1, minute + 1, second + 1 and the nanoseconds as a big endian integer.
+	 */
+	static void encodeTimestamp(long epochMilli, int subMilliNanos, byte[] target, int offset) {
+		final long epochDay = Math.floorDiv(epochMilli, 86_400_000L);
+		final int millisOfDay = (int) Math.floorMod(epochMilli, 86_400_000L);
+
+		// civil from days (proleptic gregorian calendar)
+		final long z = epochDay + 719468;
+		final long era = Math.floorDiv(z, 146097);
+		final long doe = z - era * 146097;
+		final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		final long mp = (5 * doy + 2) / 153;
+		final int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+		final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		final int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+		final int secondOfDay = millisOfDay / 1000;
+		final int nanos = (millisOfDay % 1000) * 1_000_000 + subMilliNanos;
+
+		target[offset] = (byte) (year / 100 + 100);
+		target[offset + 1] = (byte) (year % 100 + 100);
+		target[offset + 2] = (byte) month;
+		target[offset + 3] = (byte) day;
+		target[offset + 4] = (byte) (secondOfDay / 3600 + 1);
+		target[offset + 5] = (byte) (secondOfDay / 60 % 60 + 1);
+		target[offset + 6] = (byte) (secondOfDay % 60 + 1);
+		target[offset + 7] = (byte) (nanos >>> 24);
+		target[offset + 8] = (byte) (nanos >>> 16);
+		target[offset + 9] = (byte) (nanos >>> 8);
+		target[offset + 10] = (byte) nanos;
+	}
+
+	private static int indexOf(byte[] data, byte[] pattern) {
+		outer:
+		for (int i = 0; i <= data.length - pattern.length; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (data[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+}
@@ -1,55 +1,91 @@
 package com.oracle.rtgenerator;
 
-import com.github.javafaker.Address;
 import oracle.jdbc.internal.OracleConnection;
 import oracle.soda.*;
-import oracle.soda.rdbms.OracleRDBMSClient;
-import oracle.soda.rdbms.impl.OracleOperationBuilderImpl;
-import oracle.sql.NUMBER;
-import oracle.sql.json.OracleJsonFactory;
-import oracle.sql.json.OracleJsonGenerator;
-import oracle.ucp.jdbc.PoolDataSource;
-
-import java.io.ByteArrayOutputStream;
+
 import java.io.InterruptedIOException;
 import java.sql.BatchUpdateException;
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.sql.SQLRecoverableException;
-import java.time.Duration;
-import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.TemporalAmount;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class PurchaseOrdersGenerator implements Runnable {
 
+	public enum Source {
+		/**
+		 * Pool of pre-generated documents (or templates in unique documents mode) shared by all the threads.
+		 */
+		CACHE,
+		/**
+		 * Every document generated by the thread itself.
+		 */
+		FRESH,
+		/**
+		 * Documents read from length-prefixed OSON files, each one inserted once.
+		 */
+		REPLAY
+	}
+
+	public enum Target {
+		/**
+		 * SODA insertAndGet into the collection.
+		 */
+		SODA,
+		/**
+		 * Array bound JDBC insert into the table of the collection, bypassing SODA.
+		 */
+		JDBC,
+		/**
+		 * Memory-mapped files, no database needed.
+		 */
+		FILE
+	}
+
 	public static int BATCH_SIZE = 10000;
 	public static boolean ASYNC_COMMIT = false;
 	public static boolean APPEND_HINT = true;
 	public static boolean TRUNCATE_FIRST = false;
-	public static int RANDOM_DOCS_PER_THREAD = 10000;
+	// documents of the pool shared by all the threads, whatever their number
+	public static int POOL_SIZE = 100000;
+	// documents of the pool built before the threads start inserting, the rest being built in the background
+	public static int POOL_MIN_READY = BATCH_SIZE;
+	public static int PRODUCER_THREADS = 0;
+	public static int QUEUED_BATCHES = 0;
+	public static boolean UNIQUE_DOCUMENTS = false;
+	public static Source SOURCE = Source.CACHE;
+	public static Target TARGET = Target.SODA;
 
 	private final int id;
-	private final PoolDataSource pds;
+	private final ConnectionPool pool;
 	private final CountDownLatch countDownLatch;
-	private final MyRandom random;
 	private final String collectionName;
+	private final PurchaseOrdersPipeline pipeline;
+	private final AtomicLong documentsBudget;
+	private final RateScheduler rateScheduler;
+	private final BatchSizeController batchSizeController;
+	private final UpdateWorkload updateWorkload;
+	private volatile boolean stopped;
 	private EnumSet<OracleConnection.CommitOption> commitOptions;
 
-	private final OracleJsonFactory factory = new OracleJsonFactory();
-	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
-
 	protected Metrics metrics;
 
-	private final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
-
-	public PurchaseOrdersGenerator(int id, PoolDataSource pds, CountDownLatch countDownLatch, String collectionName) {
+	/**
+	 * @param documentsBudget documents left to insert, shared by all the generators (null when unlimited)
+	 * @param rateScheduler   open loop schedule shared by all the generators (null for a closed loop)
+	 * @param batchSizeController batch size, fixed or adaptive, shared by all the generators
+	 * @param updateWorkload  updates applied after each insert batch (null for inserts only)
+	 */
+	public PurchaseOrdersGenerator(int id, ConnectionPool pool, CountDownLatch countDownLatch, String collectionName, PurchaseOrdersPipeline pipeline, AtomicLong documentsBudget, RateScheduler rateScheduler, BatchSizeController batchSizeController, UpdateWorkload updateWorkload) {
 		this.id = id;
-		this.pds = pds;
+		this.pool = pool;
 		this.countDownLatch = countDownLatch;
+		this.pipeline = pipeline;
+		this.documentsBudget = documentsBudget;
+		this.rateScheduler = rateScheduler;
+		this.batchSizeController = batchSizeController;
+		this.updateWorkload = updateWorkload;
 		commitOptions = ASYNC_COMMIT ?
 				EnumSet.of(
 						OracleConnection.CommitOption.WRITEBATCH,
@@ -58,7 +94,6 @@ public class PurchaseOrdersGenerator implements Runnable {
 				EnumSet.of(
 						OracleConnection.CommitOption.WRITEIMMED,
 						OracleConnection.CommitOption.WAIT);
-		this.random = new MyRandom();
 		this.metrics = new Metrics();
 		this.collectionName = collectionName;
 	}
@@ -66,97 +101,96 @@ public class PurchaseOrdersGenerator implements Runnable {
 	public void run() {
 
 		try {
-			try (Connection c = pds.getConnection()) {
-				c.setAutoCommit(false);
-
-				final Properties props = new Properties();
-				props.put("oracle.soda.sharedMetadataCache", "true");
-				props.put("oracle.soda.localMetadataCache", "true");
-
-				final OracleRDBMSClient cl = new OracleRDBMSClient(props);
-				final OracleDatabase db = cl.getDatabase(c);
-				final OracleCollection collection = db.openCollection(collectionName);
-
-				final List<OracleDocument> batchDocuments = new ArrayList<>(BATCH_SIZE);
-
-				final Map<String, String> insertOptions = new HashMap<>();
-				if (APPEND_HINT) {
-					insertOptions.put("hint", "append");
-				}
-
-				final OracleDocument[] cache = new OracleDocument[RANDOM_DOCS_PER_THREAD];
-				final long[] bytesCache = new long[RANDOM_DOCS_PER_THREAD];
-				final double[] amountsCache = new double[RANDOM_DOCS_PER_THREAD];
-				for (int i = 0; i < RANDOM_DOCS_PER_THREAD; i++) {
-					final byte[] osonData = generatePurchaseOrder(amountsCache, i);
-					bytesCache[i] = osonData.length;
-					cache[i] = db.createDocumentFrom(osonData);
-				}
-
-				OracleConnection realConnection = (OracleConnection) c;
-
-				int j = 0;
-
-				final int randomModulo = Math.min(RANDOM_DOCS_PER_THREAD, RANDOM_DOCS_PER_THREAD / 2 + random.nextInt(RANDOM_DOCS_PER_THREAD / 2));
+			// documents are either built by the pipeline producers while this thread waits for the target, or by
+			// this thread
+			final DocumentSource source = pipeline != null ? pipeline : createSource();
 
+			try (DocumentSink sink = createSink()) {
 				long loadedDocuments = 0;
 				long bytesSent = 0;
 				double salesPrice = 0d;
+				long updatedDocuments = 0;
+				final UpdateBatch updates = updateWorkload == null ? null :
+						new UpdateBatch(updateWorkload, MyRandom.globalThreadId(id), batchSizeController.getMaxBatchSize(), false);
+
+				DocumentBatch batch;
+				long intendedStart = 0L;
+				while (!stopped) {
+					if (rateScheduler != null) {
+						intendedStart = rateScheduler.claimSlot();
+						if (!waitUntil(intendedStart)) {
+							break;
+						}
+						rateScheduler.batchStarted();
+					}
 
-				if (BATCH_SIZE == 1) {
-					while (true) {
-						try {
-							bytesSent += bytesCache[j];
-							salesPrice += amountsCache[j];
-							j = ++j % randomModulo;
-
-							loadedDocuments++;
+					if ((batch = source.next()) == null) {
+						break;
+					}
 
-							collection.insertAndGet(cache[j]);
+					if (documentsBudget != null) {
+						// claims the documents of this batch, the last one may only get a part of them
+						final long remaining = documentsBudget.getAndAdd(-batch.size);
+						if (remaining <= 0) {
+							source.release(batch);
+							break;
+						}
+						if (remaining < batch.size) {
+							batch.truncate((int) remaining);
+						}
+					}
 
-							realConnection.commit(commitOptions);
+					// DATA can come from a simulator (this demo) or from a Kafka queue
+					// or can be managed one by one (no batch ingest)
+					bytesSent += batch.bytes;
+					salesPrice += batch.salesPrice;
+					loadedDocuments += batch.size;
+
+					final int batchDocuments = batch.size;
+					metrics.batchStarted();
+
+					final IngestEvents.Insert insertEvent = new IngestEvents.Insert();
+					insertEvent.begin();
+					final long insertStart = System.nanoTime();
+					sink.insert(batch);
+					final long insertEnd = System.nanoTime();
+					insertEvent.end();
+					if (insertEvent.shouldCommit()) {
+						insertEvent.session = id;
+						insertEvent.documents = batchDocuments;
+						insertEvent.bytes = batch.bytes;
+						insertEvent.commit();
+					}
 
-							metrics.update(loadedDocuments, bytesSent, salesPrice);
-						} catch (SQLException sqle) {
-							try {
-								c.rollback();
-							} catch (SQLException ignored) {
-							}
+					source.release(batch);
+
+					final IngestEvents.Commit commitEvent = new IngestEvents.Commit();
+					commitEvent.begin();
+					final long commitStart = System.nanoTime();
+					sink.commit();
+					final long commitEnd = System.nanoTime();
+					commitEvent.end();
+					if (commitEvent.shouldCommit()) {
+						commitEvent.session = id;
+						commitEvent.documents = batchDocuments;
+						commitEvent.commit();
+					}
 
-							throw sqle;
-						}
+					metrics.recordLatencies(insertEnd - insertStart, commitEnd - commitStart);
+					if (loadedDocuments == batchDocuments) {
+						metrics.recordFirstCommit(commitEnd);
 					}
-				}
-				else {
-					while (true) {
-						try {
-
-							for (int i = 0; i < BATCH_SIZE; i++) {
-								// DATA can come from a simulator (this demo) or from a Kafka queue
-								// or can be managed one by one (no batch ingest)
-								bytesSent += bytesCache[j];
-								salesPrice += amountsCache[j];
-								batchDocuments.add(cache[j]);
-								j = ++j % randomModulo;
-							}
-							loadedDocuments += BATCH_SIZE;
-
-							collection.insertAndGet(batchDocuments.iterator());
-
-							realConnection.commit(commitOptions);
-
-							batchDocuments.clear();
-
-							metrics.update(loadedDocuments, bytesSent, salesPrice);
-						} catch (SQLException sqle) {
-							try {
-								c.rollback();
-							} catch (SQLException ignored) {
-							}
-
-							throw sqle;
-						}
+					if (rateScheduler != null) {
+						metrics.recordResponseTime(commitEnd - intendedStart);
 					}
+					if (updates != null && updates.fill(batchDocuments)) {
+						final long updateStart = System.nanoTime();
+						updatedDocuments += sink.update(updates);
+						sink.commit();
+						metrics.recordUpdateLatency(System.nanoTime() - updateStart);
+					}
+
+					metrics.update(loadedDocuments, bytesSent, salesPrice, updatedDocuments);
 				}
 			}
 		} catch (SQLRecoverableException | OracleBatchException e) {
@@ -164,108 +198,67 @@ public class PurchaseOrdersGenerator implements Runnable {
 				e.printStackTrace();
 			}
 			e.printStackTrace();
+		} catch (InterruptedException ignored) {
 		} catch (Exception e) {
 			e.printStackTrace();
 		} finally {
+			metrics.batchEnded();
 			countDownLatch.countDown();
-			Thread.currentThread().interrupt();
 		}
 	}
 
-	private byte[] generatePurchaseOrder(final double[] amountsCache, final int index) throws SQLException {
-		out.reset();
-		OracleJsonGenerator gen = factory.createJsonBinaryGenerator(out);
-
-		final String firstName = random.randomFirstName();
-		final String lastName = random.randomLastName();
-		final String fullName = String.format("%s %s", firstName, lastName);
-		final Instant instant = Instant.now().plusMillis(index);
-		final String user = String.format("%s%s", firstName.charAt(0), lastName.substring(0, Math.min(lastName.length(), 8)).toUpperCase());
-		final Address address = random.randomAddress();
-
-		gen.writeStartObject(); // {
-		//gen.write("threadid", factory.createValue(new NUMBER(id)));
-		gen.write("reference", String.format("%s-%s", user, DATE_TIME_FORMATTER.format(instant)));
-		gen.write("requestor", fullName);
-		gen.write("user", user);
-		gen.write("requestedAt", instant.atOffset(ZoneOffset.UTC));
-		gen.writeStartObject("shippingInstructions");
-		gen.write("name", fullName);
-		gen.writeStartObject("address");
-		gen.write("street", address.streetAddress());
-		gen.write("city", address.cityName());
-		gen.write("state", address.stateAbbr());
-		gen.write("zipCode", address.zipCode());
-		gen.write("country", address.country());
-
-		gen.writeStartObject("geometry");
-		gen.write("type", "Point");
-		gen.writeStartArray("coordinates");
-		gen.write(factory.createValue(new NUMBER(Double.parseDouble(address.longitude().replace(',','.')))));
-		gen.write(factory.createValue(new NUMBER(Double.parseDouble(address.latitude().replace(',','.')))));
-		gen.writeEnd(); // coordinates[]
-
-		gen.writeEnd(); // geometry
-
-
-		gen.writeEnd(); // address
-		final int phones = random.nextInt(4);
-
-		if (phones > 0) {
-			gen.writeStartArray("phone");
-
-			for (int i = 1; i <= phones; i++) {
-				gen.writeStartObject();
-				gen.write("type", MyRandom.phoneTypes[i - 1]);
-				gen.write("number", i == 2 ? random.randomPhoneNumber().cellPhone() : random.randomPhoneNumber().phoneNumber());
-				gen.writeEnd();
+	/**
+	 * Waits for the intended start time of the next batch, unless stopped in between.
+	 *
+	 * @return false if stopped
+	 */
+	private boolean waitUntil(long intendedStart) throws InterruptedException {
+		long wait;
+		while (!stopped && (wait = intendedStart - System.nanoTime()) > 0L) {
+			// in slices so that a low target rate doesn't delay the stop
+			LockSupport.parkNanos(Math.min(wait, 100_000_000L));
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
 			}
-
-			gen.writeEnd(); // phone[]
-		}
-
-
-		gen.writeEnd(); // shippingInstructions
-
-		gen.write("costCenter", String.format("A%d", 10 * (1 + random.nextInt(10))));
-		if (random.nextGaussian(10d) == 2) {
-			gen.writeNull("specialInstructions");
-		}
-		else {
-			gen.write("specialInstructions", random.randomSpecialInstruction());
 		}
-		gen.write("allowPartialShipment", random.randomBoolean());
-
-		final int items = 1 + random.nextInt(5);
-
-		gen.writeStartArray("items");
-
-		double totalPrice = 0d;
-		for (int i = 0; i < items; i++) {
-			gen.writeStartObject();
+		return !stopped;
+	}
 
-			final MyRandom.Product product = random.randomProduct();
+	private DocumentSource createSource() throws Exception {
+		final boolean json = TARGET == Target.FILE && FileDocumentSink.FORMAT == FileDocumentSink.Format.JSON;
 
-			gen.write("description", product.name);
-			gen.write("unitPrice", product.price);
-			gen.write("UPCCode", product.code);
-			final int quantity = 1 + random.nextInt(4);
-			gen.write("quantity", factory.createValue(new NUMBER(quantity)));
+		switch (SOURCE) {
+			case FRESH:
+				return new GeneratedDocumentSource(id, batchSizeController, json);
 
-			totalPrice += quantity * product.priceRaw;
+			case REPLAY:
+				return new ReplayDocumentSource(batchSizeController);
 
-			gen.writeEnd();
+			case CACHE:
+			default:
+				return new CachedDocumentSource(id, batchSizeController, UNIQUE_DOCUMENTS);
 		}
+	}
 
-		amountsCache[index] = totalPrice;
-
-		gen.writeEnd();
+	private DocumentSink createSink() throws Exception {
+		switch (TARGET) {
+			case FILE:
+				return new FileDocumentSink(id);
 
-		gen.writeEnd();
+			case JDBC:
+				return new JDBCDocumentSink(pool, collectionName, commitOptions, batchSizeController.getBatchSize(), updateWorkload);
 
-		gen.close();
+			case SODA:
+			default:
+				return new SODADocumentSink(pool, collectionName, commitOptions, batchSizeController.getBatchSize(), updateWorkload);
+		}
+	}
 
-		return out.toByteArray();
+	/**
+	 * Asks the generator to stop once its current batch is committed.
+	 */
+	public void stop() {
+		stopped = true;
 	}
 
 	public Metrics getMetrics() {
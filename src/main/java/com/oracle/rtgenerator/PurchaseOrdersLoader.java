@@ -2,21 +2,23 @@ package com.oracle.rtgenerator;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import oracle.jdbc.OracleConnection;
 import oracle.soda.OracleCollection;
 import oracle.soda.OracleDatabase;
 import oracle.soda.rdbms.OracleRDBMSClient;
-import oracle.ucp.jdbc.PoolDataSource;
-import oracle.ucp.jdbc.PoolDataSourceFactory;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * Purchase Orders JSON documents generator and loader for Oracle Autonomous Databases.
@@ -24,25 +26,88 @@ import java.util.concurrent.CountDownLatch;
  * @author Loïc Lefèvre
  */
 public class PurchaseOrdersLoader {
-	public static void main(String[] args) {
+	// set by the shutdown hook (Ctrl-C): the main loop stops the generators and reports as if the run was over
+	private static volatile boolean stopRequested;
+	private static volatile ExecutorService sessionExecutor;
+
+	public static void main(String[] arguments) {
 		System.out.println("Starting loader...");
 
-		if (args.length < 3) {
-			System.out.println("Usage: loader <autonomous database service name> <user> <password> [wallet path: ./wallet*] [collection: purchase_orders*] [async: true|false*] [batch size: 1-50000, 10000*] [threads: 1-200, VCPUs*] [append: true*|false] [start with truncate: true|false*] [random docs generated per thread: 10-100000, 10000*]");
+		final CommandLineOptions options = new CommandLineOptions(arguments);
+		final String[] args = options.getPositional();
+
+		final PurchaseOrdersGenerator.Target target = PurchaseOrdersGenerator.Target.valueOf(options.getString("target", PurchaseOrdersGenerator.TARGET.name()).toUpperCase());
+
+		if (args.length < 3 && target != PurchaseOrdersGenerator.Target.FILE && !options.has("coordinator")) {
+			System.out.println("Usage: loader <autonomous database service name> <user> <password> [wallet path: ./wallet*] [collection: purchase_orders*] [async: true|false*] [batch size: 1-50000, 10000*] [threads: 1-200, VCPUs*] [append: true*|false] [start with truncate: true|false*] [random docs pooled for all the threads: 10-100000000, 100000*] [options]");
+			System.out.println("   or: loader --target file [options]");
+			System.out.println("   or: loader --coordinator <port> [<autonomous database service name> <user> <password> [wallet path: ./wallet*] [collection: purchase_orders*]] [--duration <seconds>] [--warmup <seconds>] [--http-port <port>]");
+			System.out.println("Options:");
+			System.out.println("  --threads <1-200>              overrides the threads argument");
+			System.out.println("  --batch-size <1-50000>         overrides the batch size argument");
+			System.out.println("  --adaptive-batch               tunes the batch size at runtime to maximize the throughput");
+			System.out.println("  --min-batch-size <n>           adaptive batch: lower bound (1*)");
+			System.out.println("  --max-batch-size <n>           adaptive batch: upper bound (50000*)");
+			System.out.println("  --latency-ceiling <ms>         adaptive batch: p99 insert + commit latency not to exceed (none*)");
+			System.out.println("  --sessions <n>                 concurrent insert sessions, independent of the VCPUs (threads*); add --producers to generate fresh documents off the sessions");
+			System.out.println("  --virtual-threads              runs each session in a virtual thread (Java 21+, platform threads otherwise), fresh documents then generated by VCPUs producers unless --producers is given");
+			System.out.println("  --source <cache*|fresh|replay> documents replayed from a per thread cache, all generated (fresh* for the file target) or read from OSON files");
+			System.out.println("  --replay-dir <path>            replay source: directory of length-prefixed .oson files written by the file target (./documents*)");
+			System.out.println("  --producers <0-VCPUs>          pipelined mode: number of threads generating fresh documents for the insert threads (0*, VCPUs* with virtual threads)");
+			System.out.println("  --queued-batches <n>           pipelined mode: ready batches queued ahead of the insert threads (2 x min(sessions, VCPUs)*)");
+			System.out.println("  --pool-size <n>                cache source: documents pre-generated once and shared by all the threads (100000*, whatever the threads)");
+			System.out.println("  --pool-heap-documents <n>      cache source: pooled documents kept on the heap, the others copied from off-heap when inserted (131072*)");
+			System.out.println("  --pool-min-ready <n>           cache source: documents built before the sessions start, the rest of the pool in the background (batch size*, whole pool if seeded)");
+			System.out.println("  --seed <n>                     deterministic documents: identical options produce identical documents (unseeded*)");
+			System.out.println("  --node-id <0*-n>               this loader among several ones loading the same collection (unique references and distinct random streams)");
+			System.out.println("  --node-count <1*-n>            number of loaders loading the same collection");
+			System.out.println("  --update-ratio <i:u>           updates recently inserted documents, u for every i inserted ones (e.g. 4:1, none*)");
+			System.out.println("  --update-mode <merge*|replace> updates: JSON merge patch of the lifecycle fields or whole document replaced");
+			System.out.println("  --update-keys <n>              updates: recently inserted keys kept to pick the updated documents from (100000*)");
+			System.out.println("  --readers <n>                  query workers running next to the generators, reported separately (0*)");
+			System.out.println("  --read-queries <list>          readers: comma separated requestor, user, reference, cost-center, country, recent (all*)");
+			System.out.println("  --read-limit <n>               readers: documents fetched at most per query (100*)");
+			System.out.println("  --read-window <seconds>        readers: recent query, documents created during the last seconds (10*)");
+			System.out.println("  --unique                       every inserted document gets a unique reference and a fresh requestedAt");
+			System.out.println("  --skew <category=spec,...>     skewed picks of products, customers, cost-centers or countries: uniform, zipf[:s], pareto[:alpha] or hotset[:fraction:share]");
+			System.out.println("  --template <path>              JSON template of the generated documents, file or class path resource (purchase order*)");
+			System.out.println("  --target <soda*|jdbc|file>     insert into the SODA collection, array insert into its table with plain JDBC or write memory-mapped files (no database needed)");
+			System.out.println("  --connection-pool <ucp*|hikari|dedicated> database targets: connections borrowed from UCP, HikariCP or opened one per session, reader and writer");
+			System.out.println("  --connections <n>              database targets: connections of the pool (sessions + readers + 2*)");
+			System.out.println("  --file-dir <path>              file target: output directory (./documents*)");
+			System.out.println("  --file-format <oson*|json>     file target: length-prefixed OSON or newline-delimited JSON");
+			System.out.println("  --file-size <1-2047>           file target: size of each file in MB before rotating (256*)");
+			System.out.println("  --duration <seconds>           stops the run after this duration, warm-up included (0: unlimited*)");
+			System.out.println("  --max-documents <n>            stops the run once this number of documents is loaded (0: unlimited*)");
+			System.out.println("  --target-rate <PO/s>           open loop: batches sent on a schedule at this rate, response times measured from the intended start");
+			System.out.println("  --warmup <seconds>             excludes the first seconds from the final steady state figures (0*)");
+			System.out.println("  --coordinator <port>           aggregates the metrics published by several loaders (UDP), and persists them if a database is given");
+			System.out.println("  --publish <host:port>          publishes the metrics of this loader to a coordinator every second");
+			System.out.println("  --http-port <port>             exposes the metrics in the Prometheus text format at http://<host>:<port>/metrics");
+			System.out.println("  --client-id <name>             identity of this loader in the statistics and for the coordinator (node-<id> or host-pid*)");
 			System.out.println("Remark: the Autonomous database wallet must be extracted in a wallet subfolder from this directory: " + new File(".").getAbsolutePath());
 			System.exit(-1);
 		}
 
-		PoolDataSource pds;
+		ConnectionPool pool = null;
 		int cores = Runtime.getRuntime().availableProcessors();
 
-		final ThreadGroup tg = new ThreadGroup("Generators");
-		tg.setMaxPriority(Thread.NORM_PRIORITY + 2);
+		final Thread mainThread = Thread.currentThread();
 
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			public void run() {
 				try {
-					tg.interrupt();
+					// lets the generators end their current batch and the main thread print the summary
+					stopRequested = true;
+					mainThread.join(10000L);
+
+					// still running: interrupts the sessions but lets them close their target (e.g. truncate their
+					// current file)
+					final ExecutorService executor = sessionExecutor;
+					if (executor != null) {
+						executor.shutdownNow();
+						executor.awaitTermination(5L, TimeUnit.SECONDS);
+					}
 				} catch (Throwable t) {
 					Thread.currentThread().interrupt();
 				}
@@ -50,91 +115,459 @@ public class PurchaseOrdersLoader {
 			}
 		});
 
+		PrometheusExporter exporter = null;
+
 		try {
-			String databaseService = args[0];
-			String user = args[1];
-			String password = args[2];
+			String databaseService = args.length >= 1 ? args[0] : null;
+			String user = args.length >= 2 ? args[1] : null;
+			String password = args.length >= 3 ? args[2] : null;
 			String walletPath = args.length >= 4 ? args[3] : "./wallet";
 			String collectionName = args.length >= 5 ? args[4] : "purchase_orders";
 
+			if (options.has("http-port")) {
+				exporter = new PrometheusExporter(options.getInt("http-port", 0));
+				System.out.println("Prometheus metrics: http://localhost:" + options.getInt("http-port", 0) + "/metrics");
+			}
+
+			final ConnectionPool.Backend poolBackend = ConnectionPool.parseBackend(options.getString("connection-pool", ConnectionPool.Backend.UCP.name()));
+
+			if (options.has("coordinator")) {
+				// the statistics writer and the collection check
+				pool = args.length >= 3 ? initializeConnectionPool(poolBackend, databaseService, user, password, options.getInt("connections", 3), walletPath) : null;
+				runCoordinator(exporter, options.getInt("coordinator", 0), options.getLong("warmup", 0L), options.getLong("duration", 0L), pool, collectionName);
+				return;
+			}
+
 			PurchaseOrdersGenerator.ASYNC_COMMIT = args.length >= 6 ? Boolean.parseBoolean(args[5]) : PurchaseOrdersGenerator.ASYNC_COMMIT;
 			PurchaseOrdersGenerator.BATCH_SIZE = args.length >= 7 ? Integer.parseInt(args[6]) : PurchaseOrdersGenerator.BATCH_SIZE;
 			cores = args.length >= 8 ? Integer.parseInt(args[7]) : cores;
 			PurchaseOrdersGenerator.APPEND_HINT = args.length >= 9 ? Boolean.parseBoolean(args[8]) : PurchaseOrdersGenerator.APPEND_HINT;
 			PurchaseOrdersGenerator.TRUNCATE_FIRST = args.length >= 10 ? Boolean.parseBoolean(args[9]) : PurchaseOrdersGenerator.TRUNCATE_FIRST;
-			PurchaseOrdersGenerator.RANDOM_DOCS_PER_THREAD = args.length >= 11 ? Integer.parseInt(args[10]) : PurchaseOrdersGenerator.RANDOM_DOCS_PER_THREAD;
-
-			System.out.println("Database service: " + databaseService);
-			System.out.println("Database user: " + user);
-			System.out.println("SODA collection: " + collectionName);
-			System.out.println("Asynchronous commit: " + PurchaseOrdersGenerator.ASYNC_COMMIT);
-			System.out.println("Batch size: " + PurchaseOrdersGenerator.BATCH_SIZE);
-			System.out.println("Parallel degree: " + cores);
+			PurchaseOrdersGenerator.POOL_SIZE = args.length >= 11 ? Integer.parseInt(args[10]) : PurchaseOrdersGenerator.POOL_SIZE;
+			PurchaseOrdersGenerator.UNIQUE_DOCUMENTS = options.getBoolean("unique", PurchaseOrdersGenerator.UNIQUE_DOCUMENTS);
+			PurchaseOrdersGenerator.BATCH_SIZE = options.getInt("batch-size", PurchaseOrdersGenerator.BATCH_SIZE);
+			cores = options.getInt("threads", cores);
+			PurchaseOrdersGenerator.POOL_SIZE = options.getInt("pool-size", PurchaseOrdersGenerator.POOL_SIZE);
+			SharedDocumentPool.HEAP_DOCUMENTS = options.getInt("pool-heap-documents", SharedDocumentPool.HEAP_DOCUMENTS);
+			PurchaseOrdersGenerator.POOL_MIN_READY = options.getInt("pool-min-ready", Math.min(PurchaseOrdersGenerator.POOL_SIZE, PurchaseOrdersGenerator.BATCH_SIZE));
+			final int sessions = options.getInt("sessions", cores);
+			final boolean virtualThreads = options.getBoolean("virtual-threads", false);
+			final int readers = options.getInt("readers", 0);
+			// one pinned connection per session and reader, plus the statistics writer and the initial count
+			final int connections = options.getInt("connections", sessions + readers + 2);
+			final UpdateWorkload updateWorkload = options.has("update-ratio") ?
+					new UpdateWorkload(new KeyRing(options.getInt("update-keys", 100000)), UpdateWorkload.parseRatio(options.getString("update-ratio", null)),
+							UpdateWorkload.Mode.valueOf(options.getString("update-mode", UpdateWorkload.Mode.MERGE.name()).toUpperCase()))
+					: null;
+			if (options.has("read-queries")) {
+				final String[] labels = options.getString("read-queries", "").split(",");
+				PurchaseOrdersReader.QUERIES = new PurchaseOrdersReader.Query[labels.length];
+				for (int i = 0; i < labels.length; i++) {
+					PurchaseOrdersReader.QUERIES[i] = PurchaseOrdersReader.Query.fromLabel(labels[i].trim());
+				}
+			}
+			PurchaseOrdersReader.LIMIT = options.getInt("read-limit", PurchaseOrdersReader.LIMIT);
+			PurchaseOrdersReader.RECENT_WINDOW_SECONDS = options.getInt("read-window", PurchaseOrdersReader.RECENT_WINDOW_SECONDS);
+			// many sessions generating fresh documents would compete for the VCPUs: --producers moves that work off them
+			PurchaseOrdersGenerator.PRODUCER_THREADS = options.getInt("producers", PurchaseOrdersGenerator.PRODUCER_THREADS);
+			PurchaseOrdersGenerator.QUEUED_BATCHES = options.getInt("queued-batches", 2 * Math.min(sessions, Runtime.getRuntime().availableProcessors()));
+			PurchaseOrdersGenerator.TARGET = target;
+			PurchaseOrdersGenerator.SOURCE = PurchaseOrdersGenerator.Source.valueOf(options.getString("source",
+					target == PurchaseOrdersGenerator.Target.FILE || PurchaseOrdersGenerator.PRODUCER_THREADS > 0 ? "fresh" : PurchaseOrdersGenerator.SOURCE.name()).toUpperCase());
+			if (PurchaseOrdersGenerator.PRODUCER_THREADS > 0 && PurchaseOrdersGenerator.SOURCE != PurchaseOrdersGenerator.Source.FRESH) {
+				throw new IllegalArgumentException("Producers generate fresh documents, they cannot be used with the " + PurchaseOrdersGenerator.SOURCE.name().toLowerCase() + " source");
+			}
+			// virtual threads only wait for the database: the fresh documents are generated by a pool of platform
+			// threads sized to the VCPUs
+			if (!options.has("producers") && virtualThreads && WorkerExecutors.isVirtualThreadsSupported() && PurchaseOrdersGenerator.SOURCE == PurchaseOrdersGenerator.Source.FRESH) {
+				PurchaseOrdersGenerator.PRODUCER_THREADS = Runtime.getRuntime().availableProcessors();
+			}
+			ReplayDocumentSource.DIRECTORY = options.getString("replay-dir", ReplayDocumentSource.DIRECTORY);
+			FileDocumentSink.DIRECTORY = options.getString("file-dir", FileDocumentSink.DIRECTORY);
+			FileDocumentSink.FORMAT = FileDocumentSink.Format.valueOf(options.getString("file-format", FileDocumentSink.FORMAT.name()).toUpperCase());
+			FileDocumentSink.FILE_SIZE = options.getLong("file-size", FileDocumentSink.FILE_SIZE / (1024 * 1024)) * 1024 * 1024;
+			if (options.has("skew")) {
+				for (String skew : options.getString("skew", "").split(",")) {
+					final int equal = skew.indexOf('=');
+					if (equal == -1) {
+						throw new IllegalArgumentException("Skew must be <category>=<distribution>, e.g. products=zipf:1.1");
+					}
+					MyRandom.setDistribution(MyRandom.Category.fromLabel(skew.substring(0, equal).trim()), Distribution.parse(skew.substring(equal + 1)));
+				}
+			}
+			if (options.has("template")) {
+				PurchaseOrderBuilder.TEMPLATE = DocumentTemplate.load(options.getString("template", DocumentTemplate.PURCHASE_ORDER));
+			}
+
+			MyRandom.SEED = options.has("seed") ? options.getLong("seed", 0L) : null;
+			MyRandom.NODE_ID = options.getInt("node-id", MyRandom.NODE_ID);
+			MyRandom.NODE_COUNT = options.getInt("node-count", MyRandom.NODE_COUNT);
+			final String clientId = options.getString("client-id", MyRandom.NODE_COUNT > 1 ? "node-" + MyRandom.NODE_ID : MetricsPublisher.defaultClientId());
+
+			final long duration = options.getLong("duration", 0L);
+			final long maxDocuments = options.getLong("max-documents", 0L);
+			final long warmup = options.getLong("warmup", 0L);
+			final long targetRate = options.getLong("target-rate", 0L);
+			final boolean adaptiveBatch = options.getBoolean("adaptive-batch", false);
+			final BatchSizeController batchSizeController = adaptiveBatch ?
+					new BatchSizeController(PurchaseOrdersGenerator.BATCH_SIZE, options.getInt("min-batch-size", 1), options.getInt("max-batch-size", 50000),
+							options.getLong("latency-ceiling", 0L) * 1000L, true)
+					: new BatchSizeController(PurchaseOrdersGenerator.BATCH_SIZE);
+
+			if (sessions <= 0) {
+				throw new IllegalArgumentException("Sessions must be positive");
+			}
+			if (PurchaseOrdersGenerator.POOL_SIZE <= 0 || SharedDocumentPool.HEAP_DOCUMENTS <= 0) {
+				throw new IllegalArgumentException("Pool size and pool heap documents must be positive");
+			}
+			if (readers < 0 || PurchaseOrdersReader.LIMIT <= 0 || PurchaseOrdersReader.RECENT_WINDOW_SECONDS <= 0) {
+				throw new IllegalArgumentException("Readers, read limit and read window must be positive");
+			}
+			if (connections < sessions + readers + 1 && poolBackend != ConnectionPool.Backend.DEDICATED && target != PurchaseOrdersGenerator.Target.FILE) {
+				// sessions and readers keep their connection for the whole run: a smaller pool would block some of them forever
+				throw new IllegalArgumentException("Connections must be at least sessions + readers + 1 (" + (sessions + readers + 1) + ")");
+			}
+			if (readers > 0 && target == PurchaseOrdersGenerator.Target.FILE) {
+				throw new IllegalArgumentException("Readers require a database target");
+			}
+			if (updateWorkload != null && target == PurchaseOrdersGenerator.Target.FILE) {
+				throw new IllegalArgumentException("Updates require a database target");
+			}
+			if (MyRandom.NODE_COUNT <= 0 || MyRandom.NODE_ID < 0 || MyRandom.NODE_ID >= MyRandom.NODE_COUNT) {
+				throw new IllegalArgumentException("Node id must be between 0 and node count - 1");
+			}
+			if (PurchaseOrdersGenerator.UNIQUE_DOCUMENTS && (long) sessions * MyRandom.NODE_COUNT > 10000) {
+				// 4 digits of the reference sequence identify the thread
+				throw new IllegalArgumentException("Unique documents mode supports up to 10000 sessions across all the nodes");
+			}
+			if (PurchaseOrdersGenerator.UNIQUE_DOCUMENTS && !PurchaseOrderBuilder.TEMPLATE.supportsUniqueDocuments()) {
+				throw new IllegalArgumentException("Unique documents mode requires a template writing a $now timestamp and a string ending with its $date and a $uniqueSuffix");
+			}
+			if (duration < 0 || maxDocuments < 0 || warmup < 0) {
+				throw new IllegalArgumentException("Duration, maximum documents and warm-up must be positive");
+			}
+			if (targetRate < 0) {
+				throw new IllegalArgumentException("Target rate must be positive");
+			}
+			if (batchSizeController.getBatchSize() <= 0 || batchSizeController.getMaxBatchSize() <= 0) {
+				throw new IllegalArgumentException("Batch sizes must be positive");
+			}
+			if (adaptiveBatch && targetRate > 0) {
+				// the schedule is computed for a given batch size, and a target rate leaves no throughput to maximize
+				throw new IllegalArgumentException("Adaptive batch size cannot be used with a target rate");
+			}
+			if (duration > 0 && warmup >= duration) {
+				throw new IllegalArgumentException("Warm-up must be shorter than the duration");
+			}
+
+			if (FileDocumentSink.FILE_SIZE <= 0 || FileDocumentSink.FILE_SIZE > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("File size must be between 1 and 2047 MB");
+			}
+			if (PurchaseOrdersGenerator.UNIQUE_DOCUMENTS && target == PurchaseOrdersGenerator.Target.FILE && FileDocumentSink.FORMAT == FileDocumentSink.Format.JSON) {
+				throw new IllegalArgumentException("Unique documents mode requires OSON documents");
+			}
+
+			if (target == PurchaseOrdersGenerator.Target.FILE) {
+				System.out.println("Files: " + new File(FileDocumentSink.DIRECTORY).getAbsolutePath() + " (" + FileDocumentSink.FORMAT + ", " + FileDocumentSink.FILE_SIZE / (1024 * 1024) + " MB)");
+			}
+			else {
+				System.out.println("Database service: " + databaseService);
+				System.out.println("Database user: " + user);
+				System.out.println("SODA collection: " + collectionName + (target == PurchaseOrdersGenerator.Target.JDBC ? " (JDBC array inserts)" : ""));
+				System.out.println("Asynchronous commit: " + PurchaseOrdersGenerator.ASYNC_COMMIT);
+				System.out.println("Connection pool: " + (poolBackend == ConnectionPool.Backend.DEDICATED ? "none, dedicated connections" : poolBackend.name().toLowerCase() + ", " + connections + " connections"));
+			}
+			if (options.has("template")) {
+				System.out.println("Document template: " + PurchaseOrderBuilder.TEMPLATE.getName());
+			}
+			System.out.println("Batch size: " + PurchaseOrdersGenerator.BATCH_SIZE + (adaptiveBatch ? " (adaptive)" : ""));
+			System.out.println("Parallel degree: " + sessions + " sessions in " + (virtualThreads && WorkerExecutors.isVirtualThreadsSupported() ? "virtual" : "platform") + " threads");
+			if (updateWorkload != null) {
+				System.out.printf(Locale.US, "Updates: %s, %.3f per inserted document, picked among the last %,d inserted keys%n",
+						updateWorkload.getMode().name().toLowerCase(), updateWorkload.getUpdatesPerInsert(), updateWorkload.getKeys().capacity());
+			}
+			if (readers > 0) {
+				System.out.println("Readers: " + readers + " running " + Arrays.stream(PurchaseOrdersReader.QUERIES).map(query -> query.label).collect(Collectors.joining(", ")) + " queries, up to " + PurchaseOrdersReader.LIMIT + " documents each");
+			}
 			System.out.println("Append hint: " + PurchaseOrdersGenerator.APPEND_HINT);
+			System.out.printf(Locale.US, "Dictionaries: %s, loaded in %.0f ms%n",
+					MyRandom.areDictionariesPrecompiled() ? "precompiled" : "parsed from the text resources", MyRandom.getDictionariesLoadMillis());
+			for (MyRandom.Category category : MyRandom.Category.values()) {
+				if (MyRandom.getDistribution(category) != null) {
+					System.out.println("Skewed " + category.label + ": " + MyRandom.getDistribution(category));
+				}
+			}
+			if (MyRandom.isDeterministic()) {
+				System.out.println("Deterministic documents: seed " + MyRandom.SEED + ", node " + MyRandom.NODE_ID + " of " + MyRandom.NODE_COUNT);
+			}
+			else if (MyRandom.NODE_COUNT > 1) {
+				System.out.println("Node: " + MyRandom.NODE_ID + " of " + MyRandom.NODE_COUNT);
+			}
 			System.out.println("Truncate first: " + PurchaseOrdersGenerator.TRUNCATE_FIRST);
-			System.out.println("Random JSON documents per thread local cache: " + PurchaseOrdersGenerator.RANDOM_DOCS_PER_THREAD);
-
-			pds = initializeConnectionPool(databaseService, user, password, cores, walletPath);
+			SharedDocumentPool documentPool = null;
+			if (PurchaseOrdersGenerator.PRODUCER_THREADS > 0) {
+				System.out.println("Pipelined generation: " + PurchaseOrdersGenerator.PRODUCER_THREADS + " producers, " + PurchaseOrdersGenerator.QUEUED_BATCHES + " queued batches");
+			}
+			else if (PurchaseOrdersGenerator.SOURCE == PurchaseOrdersGenerator.Source.CACHE) {
+				System.out.println("Unique documents: " + PurchaseOrdersGenerator.UNIQUE_DOCUMENTS);
+				// the documents a session inserts depend on the documents ready when it starts, unless the pool is complete
+				if (MyRandom.isDeterministic()) {
+					PurchaseOrdersGenerator.POOL_MIN_READY = PurchaseOrdersGenerator.POOL_SIZE;
+				}
+				System.out.printf(Locale.US, "Shared pool: %,d random JSON documents built off-heap in the background (%,d kept on the heap), sessions starting once %,d are ready%n",
+						PurchaseOrdersGenerator.POOL_SIZE, PurchaseOrdersGenerator.UNIQUE_DOCUMENTS ? 0 : Math.min(PurchaseOrdersGenerator.POOL_SIZE, SharedDocumentPool.HEAP_DOCUMENTS),
+						Math.min(PurchaseOrdersGenerator.POOL_SIZE, PurchaseOrdersGenerator.POOL_MIN_READY));
+				documentPool = CachedDocumentSource.initialize(PurchaseOrdersGenerator.POOL_SIZE, PurchaseOrdersGenerator.POOL_MIN_READY, PurchaseOrdersGenerator.UNIQUE_DOCUMENTS,
+						target == PurchaseOrdersGenerator.Target.FILE && FileDocumentSink.FORMAT == FileDocumentSink.Format.JSON);
+			}
+			else if (PurchaseOrdersGenerator.SOURCE == PurchaseOrdersGenerator.Source.REPLAY) {
+				System.out.println("Replayed OSON files: " + ReplayDocumentSource.initialize() + " in " + new File(ReplayDocumentSource.DIRECTORY).getAbsolutePath());
+			}
+			else {
+				System.out.println("Documents source: " + PurchaseOrdersGenerator.SOURCE);
+			}
 
-			createSODACollectionIfNotExists(collectionName, pds);
+			if (duration > 0) {
+				System.out.println("Duration: " + duration + " s");
+			}
+			if (maxDocuments > 0) {
+				System.out.printf(Locale.US, "Maximum documents: %,d%n", maxDocuments);
+			}
+			System.out.println("Warm-up: " + warmup + " s");
+			if (targetRate > 0) {
+				System.out.printf(Locale.US, "Target rate: %,d PO/s%n", targetRate);
+			}
 
-			final CountDownLatch countDownLatch = new CountDownLatch(cores);
+			final CountDownLatch countDownLatch = new CountDownLatch(sessions);
 
 			long initialDocumentscount = 0;
 
-			try (Connection c = pds.getConnection()) {
-				try (PreparedStatement p = c.prepareStatement("select /*+ parallel(p) */ count(*) from " + collectionName + " p")) {
-					System.out.print("Initializing current JSON document counter...");
-					System.out.flush();
-					try (ResultSet r = p.executeQuery()) {
-						if (r.next()) {
-							initialDocumentscount = r.getLong(1);
-						}
-					}
-					System.out.printf("\rInitializing current JSON document counter done (%d)%n", initialDocumentscount);
-				}
+			if (target != PurchaseOrdersGenerator.Target.FILE) {
+				pool = initializeConnectionPool(poolBackend, databaseService, user, password, connections, walletPath);
+
+				createSODACollectionIfNotExists(collectionName, pool);
+
+				initialDocumentscount = countDocuments(collectionName, pool);
+			}
+
+			PurchaseOrdersPipeline pipeline = null;
+			if (PurchaseOrdersGenerator.PRODUCER_THREADS > 0) {
+				pipeline = new PurchaseOrdersPipeline(PurchaseOrdersGenerator.PRODUCER_THREADS, PurchaseOrdersGenerator.QUEUED_BATCHES, batchSizeController,
+						target == PurchaseOrdersGenerator.Target.FILE && FileDocumentSink.FORMAT == FileDocumentSink.Format.JSON);
+				pipeline.start();
 			}
 
 			final List<PurchaseOrdersGenerator> generators = new ArrayList<>();
+			final AtomicLong documentsBudget = maxDocuments > 0 ? new AtomicLong(maxDocuments) : null;
+			final RateScheduler rateScheduler = targetRate > 0 ? new RateScheduler(targetRate, PurchaseOrdersGenerator.BATCH_SIZE) : null;
+
+			final ExecutorService executor = WorkerExecutors.newSessionExecutor(sessions, virtualThreads);
+			sessionExecutor = executor;
 
-			for (int j = 0; j < cores; j++) {
-				final PurchaseOrdersGenerator generator = new PurchaseOrdersGenerator(j, pds, countDownLatch, collectionName);
+			for (int j = 0; j < sessions; j++) {
+				final PurchaseOrdersGenerator generator = new PurchaseOrdersGenerator(j, pool, countDownLatch, collectionName, pipeline, documentsBudget, rateScheduler, batchSizeController, updateWorkload);
 				generators.add(generator);
-				new Thread(tg, generator).start();
+				executor.execute(generator);
+			}
+
+			final List<PurchaseOrdersReader> queryWorkers = new ArrayList<>();
+			for (int j = 0; j < readers; j++) {
+				final PurchaseOrdersReader reader = new PurchaseOrdersReader(j, pool, collectionName);
+				queryWorkers.add(reader);
+				final Thread thread = new Thread(reader, "Reader-" + j);
+				thread.setDaemon(true);
+				thread.start();
 			}
 
-			long startTime;
-			final long initStarttime = System.currentTimeMillis();
+			// statistics are persisted off the sampling thread
+			final StatisticsWriter statisticsWriter = pool == null ? null : new StatisticsWriter(pool);
+
+			final MetricsDisplayer md = new MetricsDisplayer(initialDocumentscount, 10, statisticsWriter, rateScheduler, batchSizeController, collectionName);
+			md.setClient(clientId, sessions);
+			md.setUpdateWorkload(updateWorkload);
+			md.setDocumentPool(documentPool);
+			md.setConnectionPool(pool);
+
+			final MetricsPublisher publisher = options.has("publish") ? new MetricsPublisher(options.getString("publish", null), clientId, sessions) : null;
+			if (publisher != null) {
+				System.out.println("Publishing metrics to " + options.getString("publish", null) + " as " + clientId);
+			}
 
-			final MetricsDisplayer md = new MetricsDisplayer(initialDocumentscount, 10, pds, collectionName);
+			// fixed rate ticks: a slow tick is caught up by the next ones instead of delaying all of them
+			final long runStart = System.currentTimeMillis();
+			final long warmupEnd = runStart + TimeUnit.SECONDS.toMillis(warmup);
+			final long runEnd = duration > 0 ? runStart + TimeUnit.SECONDS.toMillis(duration) : Long.MAX_VALUE;
+			long nextTick = runStart;
+			boolean stopping = false;
 
-			while (true) {
+			// until every generator is done (duration elapsed, maximum documents loaded, all files replayed...)
+			while (countDownLatch.getCount() > 0) {
 				md.resetCurrent();
 
-				startTime = System.currentTimeMillis();
 				for (PurchaseOrdersGenerator generator : generators) {
 					final Metrics metrics = generator.getMetrics();
 					md.addMetrics(metrics);
 				}
+				for (PurchaseOrdersReader reader : queryWorkers) {
+					md.addReadMetrics(reader.getMetrics());
+				}
+
+				if (!md.isSteadyState() && System.currentTimeMillis() >= warmupEnd) {
+					md.startSteadyState();
+				}
 
 				md.display();
+				if (publisher != null) {
+					publisher.publish(md);
+				}
+				if (exporter != null) {
+					exporter.update(md, batchSizeController, rateScheduler);
+				}
+
+				batchSizeController.update(md.getDocumentsPerSecond(), md.getBatchLatencyP99());
+
+				if (!stopping && (stopRequested || System.currentTimeMillis() >= runEnd)) {
+					// generators end after committing their current batch
+					stopping = true;
+					for (PurchaseOrdersGenerator generator : generators) {
+						generator.stop();
+					}
+				}
+
+				nextTick += 1000L;
+				final long now = System.currentTimeMillis();
+				if (nextTick < now - 1000L) {
+					// more than one tick late (e.g. long GC pause): skip the missed ticks
+					nextTick = now;
+				}
+				// wakes up as soon as the last generator is done
+				countDownLatch.await(Math.max(0L, nextTick - now), TimeUnit.MILLISECONDS);
+			}
+
+			for (PurchaseOrdersReader reader : queryWorkers) {
+				reader.stop();
+			}
+
+			md.resetCurrent();
+			for (PurchaseOrdersGenerator generator : generators) {
+				md.addMetrics(generator.getMetrics());
+			}
+			for (PurchaseOrdersReader reader : queryWorkers) {
+				md.addReadMetrics(reader.getMetrics());
+			}
+			md.display();
+			if (publisher != null) {
+				publisher.publish(md);
+				publisher.close();
+			}
+			if (exporter != null) {
+				exporter.update(md, batchSizeController, rateScheduler);
+			}
+			System.out.println();
 
-				Thread.sleep(1000L - (System.currentTimeMillis() - startTime));
+			md.displaySummary(warmup);
+
+			// every session is done
+			executor.shutdown();
+			executor.awaitTermination(5L, TimeUnit.SECONDS);
+			if (pipeline != null) {
+				pipeline.stop();
 			}
 
-//			countDownLatch.await();
+			if (statisticsWriter != null) {
+				statisticsWriter.close();
+				if (statisticsWriter.getDroppedSamples() > 0) {
+					System.out.printf("%,d statistics samples dropped%n", statisticsWriter.getDroppedSamples());
+				}
+			}
 		} catch (Throwable t) {
 			t.printStackTrace();
 		}
 		finally {
-			if(tg != null) {
-				tg.interrupt();
+			final ExecutorService executor = sessionExecutor;
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			if (exporter != null) {
+				exporter.close();
+			}
+			if (pool != null) {
+				pool.close();
+			}
+		}
+	}
+
+	/**
+	 * Displays (and persists if a connection pool is given) the metrics of all the loaders publishing to this port,
+	 * until stopped (Ctrl-C) or the duration elapsed.
+	 */
+	private static void runCoordinator(PrometheusExporter exporter, int port, long warmup, long duration, ConnectionPool pool, String collectionName) throws Exception {
+		final MetricsCoordinator coordinator = new MetricsCoordinator(port);
+		final Thread receiver = new Thread(coordinator, "MetricsReceiver");
+		receiver.setDaemon(true);
+		receiver.start();
+		System.out.println("Coordinator listening on UDP port " + port);
+
+		final StatisticsWriter statisticsWriter = pool == null ? null : new StatisticsWriter(pool);
+		final MetricsDisplayer md = new MetricsDisplayer(0L, 10, statisticsWriter, null, null, collectionName);
+
+		final long runStart = System.currentTimeMillis();
+		final long warmupEnd = runStart + TimeUnit.SECONDS.toMillis(warmup);
+		final long runEnd = duration > 0 ? runStart + TimeUnit.SECONDS.toMillis(duration) : Long.MAX_VALUE;
+		long nextTick = runStart;
+
+		while (!stopRequested && System.currentTimeMillis() < runEnd) {
+			md.resetCurrent();
+			coordinator.collect(md);
+
+			if (!md.isSteadyState() && System.currentTimeMillis() >= warmupEnd) {
+				md.startSteadyState();
+			}
+
+			md.display();
+			if (exporter != null) {
+				exporter.update(md, null, null);
+			}
+
+			nextTick += 1000L;
+			final long now = System.currentTimeMillis();
+			if (nextTick < now - 1000L) {
+				nextTick = now;
+			}
+			Thread.sleep(Math.max(0L, nextTick - now));
+		}
+
+		coordinator.stop();
+		System.out.println();
+
+		md.displaySummary(warmup);
+
+		if (statisticsWriter != null) {
+			statisticsWriter.close();
+		}
+	}
+
+	private static long countDocuments(final String collectionName, final ConnectionPool pool) throws SQLException {
+		long initialDocumentscount = 0;
+
+		try (Connection c = pool.getConnection()) {
+			try (PreparedStatement p = c.prepareStatement("select /*+ parallel(p) */ count(*) from " + collectionName + " p")) {
+				System.out.print("Initializing current JSON document counter...");
+				System.out.flush();
+				try (ResultSet r = p.executeQuery()) {
+					if (r.next()) {
+						initialDocumentscount = r.getLong(1);
+					}
+				}
+				System.out.printf("\rInitializing current JSON document counter done (%d)%n", initialDocumentscount);
 			}
 		}
+
+		return initialDocumentscount;
 	}
 
-	private static void loadExamples(PoolDataSource pds) throws Exception {
-		try (Connection c = pds.getConnection()) {
+	private static void loadExamples(ConnectionPool pool) throws Exception {
+		try (Connection c = pool.getConnection()) {
 			c.setAutoCommit(false);
 
 			try (PreparedStatement p = c.prepareStatement("insert into products (description,price,code) values (?,?,?)")) {
@@ -186,35 +619,20 @@ public class PurchaseOrdersLoader {
 		}
 	}
 
-	private static PoolDataSource initializeConnectionPool(String connectionService, String user, String password, int cores, String walletPath) throws SQLException, IOException {
-		PoolDataSource pds = PoolDataSourceFactory.getPoolDataSource();
-		pds.setConnectionFactoryClassName("oracle.jdbc.pool.OracleDataSource");
-
-		pds.setURL("jdbc:oracle:thin:@" + connectionService + "?TNS_ADMIN=" + new File(walletPath).getCanonicalPath().replace('\\', '/'));
-		pds.setUser(user);
-		pds.setPassword(password);
-		pds.setConnectionPoolName("JDBC_UCP_POOL-" + Thread.currentThread().getName());
-		pds.setInitialPoolSize(cores + 2);
-		pds.setMinPoolSize(cores + 2);
-		pds.setMaxPoolSize(cores + 2);
-		pds.setTimeoutCheckInterval(30);
-		pds.setInactiveConnectionTimeout(120);
-		pds.setValidateConnectionOnBorrow(true);
-		pds.setMaxStatements(20);
-		pds.setConnectionProperty(OracleConnection.CONNECTION_PROPERTY_DEFAULT_ROW_PREFETCH, "20");
-
-		return pds;
+	private static ConnectionPool initializeConnectionPool(ConnectionPool.Backend backend, String connectionService, String user, String password, int connections, String walletPath) throws SQLException, IOException {
+		return ConnectionPool.create(backend, "jdbc:oracle:thin:@" + connectionService + "?TNS_ADMIN=" + new File(walletPath).getCanonicalPath().replace('\\', '/'),
+				user, password, connections);
 	}
 
-	private static void createSODACollectionIfNotExists(final String name, final PoolDataSource pds) throws Exception {
+	private static void createSODACollectionIfNotExists(final String name, final ConnectionPool pool) throws Exception {
 		final Properties props = new Properties();
 		props.put("oracle.soda.sharedMetadataCache", "true");
 		props.put("oracle.soda.localMetadataCache", "true");
 
 		final OracleRDBMSClient cl = new OracleRDBMSClient(props);
 
-		try (Connection c = pds.getConnection()) {
-			OracleDatabase db = cl.getDatabase(c);
+		try (Connection c = pool.getConnection()) {
+			OracleDatabase db = cl.getDatabase(ConnectionPool.oracleConnection(c));
 
 			OracleCollection oracleCollection = db.openCollection(name);
 			if (oracleCollection == null) {
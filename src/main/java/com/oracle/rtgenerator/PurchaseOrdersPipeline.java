@@ -0,0 +1,121 @@
+package com.oracle.rtgenerator;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decouples purchase orders generation from their insertion: a pool of producer threads keeps building fresh
+ * documents into a bounded queue of ready batches while the insert threads are busy with network round trips and
+ * commits.
+ * <p>
+ * Batches are recycled through a free list so that the memory used by the pipeline stays bounded by the number of
+ * queued batches. A producer failure stops the other producers and is thrown to every insert thread by {@link #next()}.
+ */
+public class PurchaseOrdersPipeline implements DocumentSource {
+	private final BlockingQueue<DocumentBatch> ready;
+	private final BlockingQueue<DocumentBatch> free;
+	private final List<Thread> producers = new ArrayList<>();
+	// queued after a producer failure, passed on from one insert thread to the next
+	private final DocumentBatch failed;
+	private volatile Exception failure;
+
+	private final boolean json;
+
+	public PurchaseOrdersPipeline(int producerThreads, int queuedBatches, BatchSizeController batchSizeController, boolean json) {
+		this.json = json;
+		ready = new ArrayBlockingQueue<>(queuedBatches);
+		// batches can either be queued, being filled by a producer or being drained by an insert thread
+		final int batches = 2 * queuedBatches + producerThreads;
+		free = new ArrayBlockingQueue<>(batches);
+		failed = new DocumentBatch(batchSizeController);
+		for (int i = 0; i < batches; i++) {
+			free.add(new DocumentBatch(batchSizeController));
+		}
+
+		for (int i = 0; i < producerThreads; i++) {
+			final int index = i;
+			final Thread producer = new Thread(() -> produce(index), "Producer-" + i);
+			producer.setDaemon(true);
+			producers.add(producer);
+		}
+	}
+
+	public void start() {
+		for (Thread producer : producers) {
+			producer.start();
+		}
+	}
+
+	public void stop() {
+		for (Thread producer : producers) {
+			producer.interrupt();
+		}
+	}
+
+	/**
+	 * Waits for the next ready batch.
+	 *
+	 * @throws IllegalStateException if a producer failed
+	 */
+	@Override
+	public DocumentBatch next() throws InterruptedException {
+		final DocumentBatch batch = ready.take();
+		if (batch == failed) {
+			// for the next insert thread waiting, the producers being stopped there is room for it
+			ready.offer(failed);
+			throw new IllegalStateException("A producer failed to generate the documents", failure);
+		}
+		return batch;
+	}
+
+	@Override
+	public void release(DocumentBatch batch) {
+		batch.clear();
+		free.offer(batch);
+	}
+
+	private void produce(int index) {
+		final PurchaseOrderBuilder builder = new PurchaseOrderBuilder(json, MyRandom.forStream(MyRandom.Stream.PRODUCER, index), 0L);
+		final double[] amount = new double[1];
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				final DocumentBatch batch = free.take();
+
+				final IngestEvents.Generate event = new IngestEvents.Generate();
+				event.begin();
+				while (!batch.isFull()) {
+					final byte[] osonData = builder.generatePurchaseOrder(amount, 0);
+					batch.add(osonData, amount[0]);
+				}
+				event.end();
+				if (event.shouldCommit()) {
+					event.documents = batch.size;
+					event.bytes = batch.bytes;
+					event.commit();
+				}
+
+				ready.put(batch);
+			}
+		} catch (InterruptedException ignored) {
+		} catch (SQLException | RuntimeException e) {
+			failed(e);
+		}
+	}
+
+	private void failed(Exception e) {
+		failure = e;
+		for (Thread producer : producers) {
+			if (producer != Thread.currentThread()) {
+				producer.interrupt();
+			}
+		}
+		try {
+			ready.put(failed);
+		} catch (InterruptedException ignored) {
+		}
+	}
+}
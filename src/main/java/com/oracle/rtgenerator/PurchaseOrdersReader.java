@@ -0,0 +1,188 @@
+package com.oracle.rtgenerator;
+
+import oracle.soda.OracleCollection;
+import oracle.soda.OracleCursor;
+import oracle.soda.OracleDatabase;
+import oracle.soda.rdbms.OracleRDBMSClient;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+
+/**
+ * Queries the collection while it is being loaded, as fast as possible, using one pooled connection for its whole
+ * life. Filter values are drawn from the same distributions as the generated documents so that queries hit real data.
+ */
+public class PurchaseOrdersReader implements Runnable {
+
+	public enum Query {
+		/**
+		 * QBE on the full name of the requestor (IDX_REQUESTOR).
+		 */
+		REQUESTOR("requestor"),
+		/**
+		 * QBE on the user name.
+		 */
+		USER("user"),
+		/**
+		 * QBE on the reference prefix of a user for the current day.
+		 */
+		REFERENCE("reference"),
+		/**
+		 * QBE on the cost center, low cardinality.
+		 */
+		COST_CENTER("cost-center"),
+		/**
+		 * QBE on the country of the shipping address, low cardinality.
+		 */
+		COUNTRY("country"),
+		/**
+		 * Documents created during the last seconds, scanning the most recent CREATED_ON partition.
+		 */
+		RECENT("recent");
+
+		public final String label;
+
+		Query(String label) {
+			this.label = label;
+		}
+
+		public static Query fromLabel(String label) {
+			for (Query query : values()) {
+				if (query.label.equalsIgnoreCase(label)) {
+					return query;
+				}
+			}
+			throw new IllegalArgumentException("Unknown query: " + label);
+		}
+	}
+
+	public static Query[] QUERIES = Query.values();
+	// documents fetched at most by each query
+	public static int LIMIT = 100;
+	// created during the last seconds
+	public static int RECENT_WINDOW_SECONDS = 10;
+
+	private final int id;
+	private final ConnectionPool pool;
+	private final String collectionName;
+	private final ReadMetrics metrics = new ReadMetrics();
+	private volatile boolean stopped;
+
+	public PurchaseOrdersReader(int id, ConnectionPool pool, String collectionName) {
+		this.id = id;
+		this.pool = pool;
+		this.collectionName = collectionName;
+	}
+
+	public void run() {
+		final MyRandom random = MyRandom.forStream(MyRandom.Stream.READER, id);
+
+		try (Connection c = pool.getConnection()) {
+			final Properties props = new Properties();
+			props.put("oracle.soda.sharedMetadataCache", "true");
+			props.put("oracle.soda.localMetadataCache", "true");
+
+			final OracleDatabase db = new OracleRDBMSClient(props).getDatabase(ConnectionPool.oracleConnection(c));
+			final OracleCollection collection = db.openCollection(collectionName);
+
+			try (PreparedStatement recent = c.prepareStatement("select JSON_DOCUMENT from " + collectionName +
+					" where CREATED_ON >= sys_extract_utc(SYSTIMESTAMP) - numtodsinterval(?, 'SECOND') fetch first ? rows only")) {
+				recent.setInt(1, RECENT_WINDOW_SECONDS);
+				recent.setInt(2, LIMIT);
+
+				while (!stopped) {
+					final Query query = QUERIES[QUERIES.length == 1 ? 0 : random.nextInt(QUERIES.length)];
+
+					final long start = System.nanoTime();
+					final int documents = query == Query.RECENT ? scan(recent) : find(collection, filter(query, random));
+					metrics.record(query, System.nanoTime() - start, documents);
+				}
+			}
+		} catch (Exception e) {
+			if (!stopped) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return a QBE filter whose values follow the distributions of {@link PurchaseOrderBuilder}
+	 */
+	private static String filter(Query query, MyRandom random) {
+		switch (query) {
+			case REQUESTOR:
+				return "{\"requestor\":\"" + escape(random.randomFirstName() + " " + random.randomLastName()) + "\"}";
+
+			case USER:
+				return "{\"user\":\"" + escape(randomUser(random)) + "\"}";
+
+			case REFERENCE:
+				return "{\"reference\":{\"$startsWith\":\"" + escape(randomUser(random) + "-" + referenceDate()) + "\"}}";
+
+			case COST_CENTER:
+				return "{\"costCenter\":\"" + escape(random.randomCostCenter()) + "\"}";
+
+			case COUNTRY:
+			default:
+				return "{\"shippingInstructions.address.country\":\"" + escape(random.randomCountry()) + "\"}";
+		}
+	}
+
+	private static String randomUser(MyRandom random) {
+		final String firstName = random.randomFirstName();
+		return firstName.charAt(0) + MyRandom.userSuffixes.get(random.randomLastNameIndex());
+	}
+
+	/**
+	 * Same date as the references generated today, or at the logical start of a deterministic run.
+	 */
+	private static String referenceDate() {
+		final LocalDate date = MyRandom.isDeterministic() ?
+				Instant.ofEpochMilli(PurchaseOrderBuilder.LOGICAL_EPOCH_MILLI).atOffset(ZoneOffset.UTC).toLocalDate()
+				: LocalDate.now(ZoneOffset.UTC);
+		return date.format(DateTimeFormatter.BASIC_ISO_DATE);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static int find(OracleCollection collection, String filter) throws Exception {
+		int documents = 0;
+		try (OracleCursor cursor = collection.find().filter(filter).limit(LIMIT).getCursor()) {
+			while (cursor.hasNext()) {
+				cursor.next().getContentAsByteArray();
+				documents++;
+			}
+		}
+		return documents;
+	}
+
+	private static int scan(PreparedStatement recent) throws Exception {
+		int documents = 0;
+		try (ResultSet r = recent.executeQuery()) {
+			while (r.next()) {
+				r.getBytes(1);
+				documents++;
+			}
+		}
+		return documents;
+	}
+
+	/**
+	 * Asks the reader to stop once its current query is done.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	public ReadMetrics getMetrics() {
+		return metrics;
+	}
+}
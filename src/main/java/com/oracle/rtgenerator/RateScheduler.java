@@ -0,0 +1,73 @@
+package com.oracle.rtgenerator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Open loop load: batches are sent according to a schedule derived from the target rate, whatever the time the
+ * previous ones took. The intended start times are handed out in order to the sessions (the first one asking gets the
+ * next slot) so that the load is spread across all of them.
+ * <p>
+ * Latencies measured from the intended start time include the time spent waiting for a free session, avoiding the
+ * coordinated omission of a closed loop that slows down together with the database.
+ */
+public class RateScheduler {
+	private static final long NOT_STARTED = Long.MIN_VALUE;
+
+	private final long targetRate;
+	private final int batchSize;
+	private final double batchIntervalNanos;
+	private final AtomicLong slots = new AtomicLong();
+	private final LongAdder startedBatches = new LongAdder();
+	private volatile long startTime = NOT_STARTED;
+
+	/**
+	 * @param targetRate purchase orders per second
+	 */
+	public RateScheduler(long targetRate, int batchSize) {
+		this.targetRate = targetRate;
+		this.batchSize = batchSize;
+		this.batchIntervalNanos = batchSize * 1_000_000_000d / targetRate;
+	}
+
+	/**
+	 * Claims the next slot of the schedule, the schedule starts with the first claim.
+	 *
+	 * @return the intended start time of the batch ({@link System#nanoTime()} based)
+	 */
+	public long claimSlot() {
+		long start = startTime;
+		if (start == NOT_STARTED) {
+			synchronized (this) {
+				if (startTime == NOT_STARTED) {
+					startTime = System.nanoTime();
+				}
+				start = startTime;
+			}
+		}
+		return start + (long) (slots.getAndIncrement() * batchIntervalNanos);
+	}
+
+	/**
+	 * Notifies that a batch is being sent.
+	 */
+	public void batchStarted() {
+		startedBatches.increment();
+	}
+
+	public long getTargetRate() {
+		return targetRate;
+	}
+
+	/**
+	 * @return documents that should have been sent by now but are not yet
+	 */
+	public long getBacklog() {
+		final long start = startTime;
+		if (start == NOT_STARTED) {
+			return 0L;
+		}
+		final long dueBatches = (long) ((System.nanoTime() - start) / batchIntervalNanos) + 1L;
+		return Math.max(0L, dueBatches - startedBatches.sum()) * batchSize;
+	}
+}
@@ -0,0 +1,51 @@
+package com.oracle.rtgenerator;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+/**
+ * Totals and latencies published by one reader thread (the single writer) and read by the metrics displayer, kept
+ * apart from the metrics of the generators.
+ */
+public class ReadMetrics {
+	private final SingleWriterRecorder[] latencies = new SingleWriterRecorder[PurchaseOrdersReader.Query.values().length];
+	// interval histograms recycled by the displayer
+	private final Histogram[] intervals = new Histogram[latencies.length];
+
+	private volatile long queries;
+	private volatile long documents;
+
+	public ReadMetrics() {
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new SingleWriterRecorder(3);
+		}
+	}
+
+	/**
+	 * Records one query; must only be called by the reader thread.
+	 *
+	 * @param documents documents fetched by the query
+	 */
+	public void record(PurchaseOrdersReader.Query query, long nanos, int documents) {
+		latencies[query.ordinal()].recordValue(nanos / 1000L);
+		this.documents += documents;
+		this.queries++;
+	}
+
+	public long getQueries() {
+		return queries;
+	}
+
+	public long getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * @return the latencies of the given query recorded since the previous call, only valid until the next call
+	 */
+	public Histogram getLatencyInterval(PurchaseOrdersReader.Query query) {
+		final int i = query.ordinal();
+		intervals[i] = latencies[i].getIntervalHistogram(intervals[i]);
+		return intervals[i];
+	}
+}
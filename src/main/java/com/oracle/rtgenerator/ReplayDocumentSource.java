@@ -0,0 +1,89 @@
+package com.oracle.rtgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Replays files of length-prefixed OSON documents (as written by {@link FileDocumentSink}) without any parsing nor
+ * generation. The files are shared by all the generator threads: each thread maps the next file not yet taken and
+ * streams its documents into batches, so every document is inserted exactly once.
+ * <p>
+ * The files carry no purchase order amount, the sales price metric stays at zero in this mode.
+ */
+public class ReplayDocumentSource implements DocumentSource {
+	public static String DIRECTORY = "./documents";
+
+	private static Queue<Path> FILES;
+
+	private final DocumentBatch batch;
+	private MappedByteBuffer buffer;
+
+	public ReplayDocumentSource(BatchSizeController batchSizeController) {
+		this.batch = new DocumentBatch(batchSizeController);
+	}
+
+	/**
+	 * Lists the <code>.oson</code> files to replay, in name order.
+	 *
+	 * @return the number of files found
+	 */
+	public static int initialize() throws IOException {
+		final File[] files = new File(DIRECTORY).listFiles((dir, name) -> name.endsWith(".oson"));
+		if (files == null) {
+			throw new IOException("Replay directory not found: " + DIRECTORY);
+		}
+		Arrays.sort(files);
+
+		FILES = new ConcurrentLinkedQueue<>();
+		for (File file : files) {
+			FILES.add(file.toPath());
+		}
+
+		return files.length;
+	}
+
+	@Override
+	public DocumentBatch next() throws IOException {
+		while (!batch.isFull()) {
+			// a zero length marks the end of a file that was not truncated
+			if (buffer == null || buffer.remaining() < 4 || buffer.getInt(buffer.position()) == 0) {
+				if (!nextFile()) {
+					break;
+				}
+				continue;
+			}
+
+			final byte[] document = new byte[buffer.getInt()];
+			buffer.get(document);
+			batch.add(document, 0d);
+		}
+
+		return batch.size == 0 ? null : batch;
+	}
+
+	private boolean nextFile() throws IOException {
+		final Path file = FILES.poll();
+		if (file == null) {
+			buffer = null;
+			return false;
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid once the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		return true;
+	}
+
+	@Override
+	public void release(DocumentBatch batch) {
+		batch.clear();
+	}
+}
@@ -0,0 +1,155 @@
+package com.oracle.rtgenerator;
+
+import oracle.jdbc.internal.OracleConnection;
+import oracle.soda.OracleCollection;
+import oracle.soda.OracleDatabase;
+import oracle.soda.OracleDocument;
+import oracle.soda.OracleException;
+import oracle.soda.rdbms.OracleRDBMSClient;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Inserts the documents into a SODA collection using one pooled connection for the whole life of the sink. The updates
+ * are array bound on the same connection by a {@link DocumentUpdater}, SODA only updating one key per round trip.
+ */
+public class SODADocumentSink implements DocumentSink {
+	private final Connection c;
+	private final OracleConnection realConnection;
+	private final OracleDatabase db;
+	private final OracleCollection collection;
+	private final EnumSet<OracleConnection.CommitOption> commitOptions;
+	private final List<OracleDocument> batchDocuments;
+	// keys of the inserted documents for the update workload (null if none)
+	private final KeyRing keyRing;
+	private String[] batchKeys;
+	// null without update workload
+	private final DocumentUpdater updater;
+
+	/**
+	 * @param updates update workload, null for inserts only
+	 */
+	public SODADocumentSink(ConnectionPool pool, String collectionName, EnumSet<OracleConnection.CommitOption> commitOptions, int batchSize, UpdateWorkload updates) throws SQLException, OracleException {
+		this.commitOptions = commitOptions;
+		this.keyRing = updates != null ? updates.getKeys() : null;
+		this.batchKeys = keyRing != null ? new String[batchSize] : null;
+
+		c = pool.getConnection();
+		try {
+			c.setAutoCommit(false);
+
+			final Properties props = new Properties();
+			props.put("oracle.soda.sharedMetadataCache", "true");
+			props.put("oracle.soda.localMetadataCache", "true");
+
+			realConnection = ConnectionPool.oracleConnection(c);
+			final OracleRDBMSClient cl = new OracleRDBMSClient(props);
+			db = cl.getDatabase(realConnection);
+			collection = db.openCollection(collectionName);
+			batchDocuments = new ArrayList<>(batchSize);
+			// the collection is backed by the table of the same name (see PurchaseOrdersLoader)
+			updater = updates != null ? new DocumentUpdater(c, collectionName, updates.getMode()) : null;
+		} catch (SQLException | OracleException | RuntimeException e) {
+			c.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void insert(DocumentBatch batch) throws SQLException, OracleException {
+		try {
+			if (batch.size == 1) {
+				final OracleDocument inserted = collection.insertAndGet(document(batch, 0));
+				if (keyRing != null) {
+					batchKeys[0] = inserted.getKey();
+					keyRing.add(batchKeys, 1);
+				}
+			}
+			else {
+				for (int i = 0; i < batch.size; i++) {
+					batchDocuments.add(document(batch, i));
+				}
+
+				final List<OracleDocument> inserted = collection.insertAndGet(batchDocuments.iterator());
+
+				batchDocuments.clear();
+
+				if (keyRing != null) {
+					if (batchKeys.length < inserted.size()) {
+						// the adaptive batch size has grown
+						batchKeys = new String[batch.documents.length];
+					}
+					for (int i = 0; i < inserted.size(); i++) {
+						batchKeys[i] = inserted.get(i).getKey();
+					}
+					keyRing.add(batchKeys, inserted.size());
+				}
+			}
+		} catch (OracleException e) {
+			batchDocuments.clear();
+			rollback();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the SODA document of a document of the batch, created once for all the threads for the documents of the
+	 * heap cache of the shared pool (as the former per thread caches did) since SODA only reads them
+	 */
+	private OracleDocument document(DocumentBatch batch, int i) throws OracleException {
+		final int index = batch.poolIndexes[i];
+		if (index < 0) {
+			return db.createDocumentFrom(batch.documents[i]);
+		}
+
+		OracleDocument document = (OracleDocument) batch.pool.getAttachment(index);
+		if (document == null) {
+			document = db.createDocumentFrom(batch.documents[i]);
+			batch.pool.attach(index, document);
+		}
+		return document;
+	}
+
+	@Override
+	public int update(UpdateBatch batch) throws SQLException {
+		try {
+			return updater.update(batch);
+		} catch (SQLException e) {
+			rollback();
+			throw e;
+		}
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		try {
+			realConnection.commit(commitOptions);
+		} catch (SQLException sqle) {
+			rollback();
+			throw sqle;
+		}
+	}
+
+	private void rollback() {
+		try {
+			c.rollback();
+		} catch (SQLException ignored) {
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			if (updater != null) {
+				updater.close();
+			}
+		} finally {
+			c.close();
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.oracle.rtgenerator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pre-generated documents shared by all the generator threads and stored once, whatever the number of threads.
+ * <p>
+ * The documents are packed off-heap into direct buffer segments and described by primitive arrays (position and length
+ * of each document, plus the placeholder offsets of the templates in unique documents mode), so that even a pool of
+ * millions of documents adds no object for the garbage collector to trace. The documents inserted as they are go
+ * through a bounded heap cache of byte arrays shared by all the threads (see {@link #HEAP_DOCUMENTS}): replaying a
+ * pool that fits in it allocates nothing, a larger pool copies the documents missing from it. In unique documents
+ * mode, every insert needs its own patched copy anyway. The pool is built in parallel by chunks of documents. Every
+ * chunk uses its own random stream so that, in deterministic mode, the pool content does not depend on the number of
+ * builder threads.
+ * <p>
+ * The pool is built in the background: the chunks are published in order as soon as they are complete, so that the
+ * generator threads can start inserting once a minimum working set is ready, cycling over the ready documents until
+ * the whole pool is. A builder failure stops the inserts: the cursors throw it once the ready documents are all the
+ * pool will ever have.
+ */
+public class SharedDocumentPool {
+	// documents kept on the heap as byte arrays, whatever the size of the pool
+	public static int HEAP_DOCUMENTS = 128 * 1024;
+
+	private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final VarHandle LONGS_IN_BUFFER = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+	private static final VarHandle LONGS_IN_ARRAY = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	// documents copied on the heap, shared by all the inserts, in the slot index % length; null in unique documents
+	// mode
+	private final AtomicReferenceArray<HeapDocument> heapDocuments;
+	private final double[] amounts;
+	// documents packed into segments added by the builders while the readers copy the published ones
+	private final List<ByteBuffer> segments = new CopyOnWriteArrayList<>();
+	// segment index in the upper 32 bits, position inside the segment in the lower ones
+	private final long[] positions;
+	private final int[] lengths;
+	// unique documents mode only
+	private final int[] requestedAtOffsets;
+	private final int[] referenceDateOffsets;
+	private final int[] referenceSequenceOffsets;
+	private long bytes;
+
+	// completed chunks, published in order: the documents before readyDocuments can be read
+	private final boolean[] completedChunks;
+	private int readyChunks;
+	private volatile int readyDocuments;
+	private final long startTime = System.nanoTime();
+	private long firstReadyTime;
+	private long completeTime;
+	private volatile Exception failure;
+
+	private SharedDocumentPool(int size, boolean templates) {
+		heapDocuments = templates ? null : new AtomicReferenceArray<>(Math.max(1, Math.min(size, HEAP_DOCUMENTS)));
+		amounts = new double[size];
+		positions = new long[size];
+		lengths = new int[size];
+		requestedAtOffsets = templates ? new int[size] : null;
+		referenceDateOffsets = templates ? new int[size] : null;
+		referenceSequenceOffsets = templates ? new int[size] : null;
+		completedChunks = new boolean[(size + CHUNK_SIZE - 1) / CHUNK_SIZE];
+	}
+
+	/**
+	 * Starts generating the documents of the pool in the background, using several threads.
+	 *
+	 * @param templates documents with placeholders to patch (unique documents mode)
+	 * @return the pool, see {@link #awaitReady(int)}
+	 */
+	public static SharedDocumentPool start(int size, int threads, boolean templates, boolean json) {
+		final SharedDocumentPool pool = new SharedDocumentPool(size, templates);
+		final AtomicInteger nextChunk = new AtomicInteger();
+
+		for (int t = 0; t < threads; t++) {
+			final Thread builder = new Thread(() -> {
+				try {
+					pool.fill(nextChunk, templates, json);
+				} catch (Exception e) {
+					pool.failed(e);
+				}
+			}, "PoolBuilder-" + t);
+			builder.setDaemon(true);
+			builder.start();
+		}
+
+		return pool;
+	}
+
+	/**
+	 * Waits until the given number of documents (at most the whole pool) can be read.
+	 *
+	 * @throws Exception the failure of a builder thread
+	 */
+	public synchronized void awaitReady(int documents) throws Exception {
+		while (readyDocuments < Math.min(documents, size()) && failure == null) {
+			wait();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private synchronized void failed(Exception e) {
+		failure = e;
+		notifyAll();
+	}
+
+	/**
+	 * Publishes the documents of the chunks completed without a gap before them.
+	 */
+	private synchronized void completed(int chunk, long filled) {
+		bytes += filled;
+		completedChunks[chunk] = true;
+		if (readyChunks < completedChunks.length && completedChunks[readyChunks]) {
+			while (readyChunks < completedChunks.length && completedChunks[readyChunks]) {
+				readyChunks++;
+			}
+			final long now = System.nanoTime();
+			if (firstReadyTime == 0L) {
+				firstReadyTime = now;
+			}
+			if (readyChunks == completedChunks.length) {
+				completeTime = now;
+			}
+			readyDocuments = Math.min(size(), readyChunks * CHUNK_SIZE);
+			notifyAll();
+		}
+	}
+
+	private void fill(AtomicInteger nextChunk, boolean templates, boolean json) throws SQLException {
+		final double[] amount = new double[1];
+		ByteBuffer segment = null;
+		int segmentIndex = -1;
+
+		int chunk;
+		while ((chunk = nextChunk.getAndIncrement()) < completedChunks.length) {
+			long filled = 0;
+			final int from = chunk * CHUNK_SIZE;
+			final int to = Math.min(size(), from + CHUNK_SIZE);
+			final PurchaseOrderBuilder builder = new PurchaseOrderBuilder(json, MyRandom.forStream(MyRandom.Stream.POOL, chunk), from);
+
+			for (int i = from; i < to; i++) {
+				final byte[] document;
+				if (templates) {
+					final PurchaseOrderTemplate template = builder.generatePurchaseOrderTemplate();
+					document = template.oson;
+					amounts[i] = template.amount;
+					requestedAtOffsets[i] = template.requestedAtOffset;
+					referenceDateOffsets[i] = template.referenceDateOffset;
+					referenceSequenceOffsets[i] = template.referenceSequenceOffset;
+				}
+				else {
+					document = builder.generatePurchaseOrder(amount, 0);
+					amounts[i] = amount[0];
+				}
+
+				if (segment == null || segment.remaining() < document.length) {
+					segment = ByteBuffer.allocateDirect(Math.max(SEGMENT_SIZE, document.length));
+					segmentIndex = addSegment(segment);
+				}
+
+				positions[i] = (long) segmentIndex << 32 | segment.position();
+				lengths[i] = document.length;
+				segment.put(document);
+				filled += document.length;
+			}
+
+			completed(chunk, filled);
+		}
+	}
+
+	private synchronized int addSegment(ByteBuffer segment) {
+		segments.add(segment);
+		return segments.size() - 1;
+	}
+
+	public int size() {
+		return amounts.length;
+	}
+
+	/**
+	 * @return the number of documents that can be read, the whole pool once complete
+	 */
+	public int getReadyDocuments() {
+		return readyDocuments;
+	}
+
+	public boolean isComplete() {
+		return readyDocuments == size();
+	}
+
+	/**
+	 * @return the failure of a builder thread, null if none
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return total size of the documents ready
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return time taken to build the first chunk, -1 if not built yet
+	 */
+	public synchronized long getFirstReadyMillis() {
+		return firstReadyTime == 0L ? -1L : (firstReadyTime - startTime) / 1_000_000L;
+	}
+
+	/**
+	 * @return time taken to build the whole pool, -1 if not complete yet
+	 */
+	public synchronized long getWarmupMillis() {
+		return completeTime == 0L ? -1L : (completeTime - startTime) / 1_000_000L;
+	}
+
+	public double getAmount(int index) {
+		return amounts[index];
+	}
+
+	/**
+	 * @return the document, shared by all the threads through the heap cache: must not be modified
+	 */
+	public byte[] get(int index) {
+		final int slot = index % heapDocuments.length();
+		HeapDocument document = heapDocuments.get(slot);
+		if (document == null || document.index != index) {
+			// racy but idempotent: concurrent misses copy the same document, the last one is kept
+			document = new HeapDocument(index, copy(index));
+			heapDocuments.set(slot, document);
+		}
+		return document.bytes;
+	}
+
+	/**
+	 * @return the documents kept on the heap at most
+	 */
+	public int getHeapCapacity() {
+		return heapDocuments == null ? 0 : heapDocuments.length();
+	}
+
+	/**
+	 * @return the object a sink derived from the document, null if none yet or if the document left the heap cache
+	 */
+	public Object getAttachment(int index) {
+		final HeapDocument document = heapDocuments.get(index % heapDocuments.length());
+		return document != null && document.index == index ? document.attachment : null;
+	}
+
+	/**
+	 * Keeps an object derived from the document (immutable, shared by all the threads) for the next inserts of the
+	 * same document, as long as the document stays in the heap cache: the attachments are bounded by its size, not by
+	 * the size of the pool. Racy but idempotent: concurrent sinks attaching equivalent objects, the last one is kept.
+	 */
+	public void attach(int index, Object attachment) {
+		final HeapDocument document = heapDocuments.get(index % heapDocuments.length());
+		if (document != null && document.index == index) {
+			document.attachment = attachment;
+		}
+	}
+
+	/**
+	 * @return a copy of the document, on the heap
+	 */
+	private byte[] copy(int index) {
+		final ByteBuffer segment = segments.get((int) (positions[index] >>> 32));
+		final int position = (int) positions[index];
+		final int length = lengths[index];
+		final byte[] document = new byte[length];
+
+		int i = 0;
+		for (; i <= length - Long.BYTES; i += Long.BYTES) {
+			LONGS_IN_ARRAY.set(document, i, (long) LONGS_IN_BUFFER.get(segment, position + i));
+		}
+		for (; i < length; i++) {
+			document[i] = segment.get(position + i);
+		}
+
+		return document;
+	}
+
+	/**
+	 * @return a copy of the template turned into a unique document
+	 */
+	public byte[] copyPatched(int index, long sequence, long epochMilli, int nanos) {
+		final byte[] document = copy(index);
+		PurchaseOrderTemplate.patch(document, requestedAtOffsets[index], referenceDateOffsets[index], referenceSequenceOffsets[index], sequence, epochMilli, nanos);
+		return document;
+	}
+
+	private static final class HeapDocument {
+		final int index;
+		final byte[] bytes;
+		// per document object derived once by the sinks, e.g. the SODA document wrapping its bytes
+		volatile Object attachment;
+
+		HeapDocument(int index, byte[] bytes) {
+			this.index = index;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * @return a cursor visiting every document once per cycle, starting at a random document with a random stride
+	 */
+	public Cursor cursor(MyRandom random) {
+		return new Cursor(this, random);
+	}
+
+	/**
+	 * Per thread position in the pool. While the pool is being built, the positions of the documents not ready yet
+	 * are folded onto the ready ones.
+	 */
+	public static class Cursor {
+		private final SharedDocumentPool pool;
+		private final int size;
+		private final int stride;
+		private int index;
+
+		Cursor(SharedDocumentPool pool, MyRandom random) {
+			this.pool = pool;
+			this.size = pool.size();
+			this.index = random.nextInt(size);
+
+			// coprime with the size so that the whole pool is visited
+			int stride = 1 + random.nextInt(size);
+			while (gcd(stride, size) != 1) {
+				stride++;
+			}
+			this.stride = stride % size == 0 ? 1 : stride;
+		}
+
+		/**
+		 * @throws IllegalStateException if a builder thread failed before the pool was complete
+		 */
+		public int next() {
+			final int current = index;
+			index = (int) ((index + (long) stride) % size);
+			final int ready = pool.readyDocuments;
+			if (ready < size && pool.failure != null) {
+				throw new IllegalStateException("The document pool could not be built", pool.failure);
+			}
+			return current < ready ? current : current % ready;
+		}
+
+		private static int gcd(int a, int b) {
+			while (b != 0) {
+				final int t = a % b;
+				a = b;
+				b = t;
+			}
+			return a;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.oracle.rtgenerator;
+
+import oracle.soda.OracleCollection;
+import oracle.soda.OracleDatabase;
+import oracle.soda.OracleDocument;
+import oracle.soda.OracleException;
+import oracle.soda.rdbms.OracleRDBMSClient;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the statistics documents from a dedicated background thread so that the sampling clock never waits for
+ * the database. The thread keeps its connection and the collection handle, and inserts all the pending samples in
+ * one round trip. When the queue is full (database too slow or unavailable), new samples are dropped.
+ */
+public class StatisticsWriter implements AutoCloseable {
+	public static final String COLLECTION_NAME = "statistics";
+
+	private static final int QUEUE_CAPACITY = 120;
+	private static final int MAX_SAMPLES_PER_INSERT = 30;
+
+	private final ConnectionPool pool;
+	private final BlockingQueue<byte[]> samples = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final Thread thread;
+	private volatile boolean closed;
+	private volatile long droppedSamples;
+
+	private Connection c;
+	private OracleDatabase db;
+	private OracleCollection collection;
+
+	public StatisticsWriter(ConnectionPool pool) {
+		this.pool = pool;
+		thread = new Thread(this::run, "StatisticsWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues an OSON statistics document, never blocks.
+	 *
+	 * @return false if the sample was dropped
+	 */
+	public boolean publish(byte[] sample) {
+		if (!samples.offer(sample)) {
+			droppedSamples++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Queues a document that must not be lost (e.g. the run summary), waiting for room if needed.
+	 *
+	 * @return false if the document was dropped after the timeout
+	 */
+	public boolean publish(byte[] sample, long timeoutMillis) throws InterruptedException {
+		if (!samples.offer(sample, timeoutMillis, TimeUnit.MILLISECONDS)) {
+			droppedSamples++;
+			return false;
+		}
+		return true;
+	}
+
+	public long getDroppedSamples() {
+		return droppedSamples;
+	}
+
+	private void run() {
+		final List<byte[]> pending = new ArrayList<>(MAX_SAMPLES_PER_INSERT);
+		final List<OracleDocument> documents = new ArrayList<>(MAX_SAMPLES_PER_INSERT);
+
+		while (!closed || !samples.isEmpty()) {
+			try {
+				final byte[] first = samples.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				pending.add(first);
+				samples.drainTo(pending, MAX_SAMPLES_PER_INSERT - 1);
+
+				try {
+					open();
+					for (byte[] sample : pending) {
+						documents.add(db.createDocumentFrom(sample));
+					}
+					collection.insertAndGet(documents.iterator());
+				} catch (SQLException | OracleException e) {
+					e.printStackTrace();
+					// the samples are lost, a new connection will be used for the next ones
+					disconnect();
+				} finally {
+					pending.clear();
+					documents.clear();
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+
+		disconnect();
+	}
+
+	private void open() throws SQLException, OracleException {
+		if (c == null) {
+			c = pool.getConnection();
+			c.setAutoCommit(true);
+
+			final Properties props = new Properties();
+			props.put("oracle.soda.sharedMetadataCache", "true");
+			props.put("oracle.soda.localMetadataCache", "true");
+
+			final OracleRDBMSClient cl = new OracleRDBMSClient(props);
+			db = cl.getDatabase(ConnectionPool.oracleConnection(c));
+			collection = db.openCollection(COLLECTION_NAME);
+
+			if (collection == null) {
+				collection = db.admin().createCollection(COLLECTION_NAME);
+			}
+		}
+	}
+
+	private void disconnect() {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (SQLException ignored) {
+			}
+			c = null;
+			db = null;
+			collection = null;
+		}
+	}
+
+	/**
+	 * Writes the samples still queued (waiting at most 10 seconds) and releases the connection.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			thread.join(10_000L);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package com.oracle.rtgenerator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import oracle.sql.NUMBER;
+import oracle.sql.json.OracleJsonFactory;
+import oracle.sql.json.OracleJsonNumber;
+import oracle.sql.json.OracleJsonValue;
+
+import java.lang.reflect.Array;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Rows a {@link DocumentTemplate} picks its values from. Each row has one or more named columns, the first one being
+ * written when the row itself is. A column holds strings, JSON values (numbers, booleans) or lists of strings to pick
+ * from, or decodes them lazily. Built-in dictionaries wrap the tables of {@link MyRandom}, templates can declare their
+ * own.
+ */
+final class TemplateDictionary {
+	private static final OracleJsonFactory FACTORY = new OracleJsonFactory();
+
+	/**
+	 * Row picked by the dictionaries whose distribution can be skewed.
+	 */
+	interface Picker {
+		int pick(MyRandom random);
+	}
+
+	/**
+	 * Column of a built-in dictionary whose values are decoded the first time they are picked, a String or an
+	 * OracleJsonValue.
+	 */
+	interface LazyColumn {
+		Object get(int row);
+
+		/**
+		 * @return the numeric value of the row, NaN if not a number
+		 */
+		default double number(int row) {
+			final Object value = get(row);
+			return value instanceof OracleJsonNumber ? ((OracleJsonNumber) value).doubleValue() : Double.NaN;
+		}
+	}
+
+	final String name;
+	final int size;
+	private final String[] columnNames;
+	// String[], OracleJsonValue[], String[][] or LazyColumn per column
+	private final Object[] columns;
+	// numeric value of each row of the OracleJsonValue columns, null otherwise
+	private final double[][] numbers;
+	private final Picker picker;
+
+	private TemplateDictionary(String name, String[] columnNames, Object[] columns, Picker picker) {
+		this(name, Array.getLength(columns[0]), columnNames, columns, picker);
+	}
+
+	private TemplateDictionary(String name, int size, String[] columnNames, Object[] columns, Picker picker) {
+		this.name = name;
+		this.columnNames = columnNames;
+		this.columns = columns;
+		this.picker = picker;
+		this.size = size;
+		this.numbers = new double[columns.length][];
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] instanceof OracleJsonValue[]) {
+				final OracleJsonValue[] values = (OracleJsonValue[]) columns[i];
+				numbers[i] = new double[values.length];
+				for (int j = 0; j < values.length; j++) {
+					numbers[i][j] = values[j] instanceof OracleJsonNumber ? ((OracleJsonNumber) values[j]).doubleValue() : Double.NaN;
+				}
+			}
+		}
+		if (size == 0) {
+			throw new IllegalArgumentException("Dictionary " + name + " is empty");
+		}
+	}
+
+	int pick(MyRandom random) {
+		return picker == null ? random.nextInt(size) : picker.pick(random);
+	}
+
+	/**
+	 * @return the index of the given column, the first one if null, or -1 if not found
+	 */
+	int column(String columnName) {
+		if (columnName == null) {
+			return 0;
+		}
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equals(columnName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	String columnName(int column) {
+		return columnNames[column];
+	}
+
+	/**
+	 * @return a String[], OracleJsonValue[] or String[][] holding the column value of each row, or a LazyColumn
+	 */
+	Object values(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * @return the numeric value of each row, null if the column does not hold numbers or is lazy
+	 */
+	double[] numbers(int column) {
+		return numbers[column];
+	}
+
+	/**
+	 * @return true if the column holds numbers
+	 */
+	boolean isNumeric(int column) {
+		return numbers[column] != null || columns[column] instanceof LazyColumn && !Double.isNaN(((LazyColumn) columns[column]).number(0));
+	}
+
+	/**
+	 * @return the dictionary of the given name wrapping the tables of {@link MyRandom}, or null if unknown
+	 */
+	static TemplateDictionary builtIn(String name) {
+		switch (name) {
+			case "firstNames":
+				return new TemplateDictionary(name, MyRandom.firstNames.size(), new String[]{"value"}, new Object[]{lazy(MyRandom.firstNames)},
+						MyRandom::randomFirstNameIndex);
+			case "lastNames":
+				return new TemplateDictionary(name, MyRandom.lastNames.size(), new String[]{"name", "userSuffix"},
+						new Object[]{lazy(MyRandom.lastNames), lazy(MyRandom.userSuffixes)}, MyRandom::randomLastNameIndex);
+			case "streets":
+				return single(name, MyRandom.streets);
+			case "countries":
+				return new TemplateDictionary(name, new String[]{"value"}, new Object[]{MyRandom.countries}, MyRandom::randomCountryIndex);
+			case "costCenters":
+				return new TemplateDictionary(name, new String[]{"value"}, new Object[]{MyRandom.costCenters}, MyRandom::randomCostCenterIndex);
+			case "specialInstructions":
+				return single(name, MyRandom.specialInstructions);
+			case "phoneTypes":
+				return single(name, MyRandom.phoneTypes);
+			case "phoneNumbers":
+				return single(name, MyRandom.phoneNumbers);
+			case "cellPhones":
+				return single(name, MyRandom.cellPhones);
+			case "cities": {
+				final MyRandom.City[] cities = MyRandom.cities;
+				final String[] names = new String[cities.length];
+				final String[] states = new String[cities.length];
+				final String[][] zipCodes = new String[cities.length][];
+				final OracleJsonValue[] longitudes = new OracleJsonValue[cities.length];
+				final OracleJsonValue[] latitudes = new OracleJsonValue[cities.length];
+				for (int i = 0; i < cities.length; i++) {
+					names[i] = cities[i].name;
+					states[i] = cities[i].state;
+					zipCodes[i] = cities[i].zipCodes;
+					longitudes[i] = cities[i].longitude;
+					latitudes[i] = cities[i].latitude;
+				}
+				return new TemplateDictionary(name, new String[]{"name", "state", "zipCodes", "longitude", "latitude"},
+						new Object[]{names, states, zipCodes, longitudes, latitudes}, null);
+			}
+			case "products": {
+				final LazyColumn prices = new LazyColumn() {
+					@Override
+					public Object get(int row) {
+						return MyRandom.product(row).price;
+					}
+
+					@Override
+					public double number(int row) {
+						return MyRandom.product(row).priceRaw;
+					}
+				};
+				return new TemplateDictionary(name, MyRandom.productCount(), new String[]{"name", "unitPrice", "upcCode"},
+						new Object[]{(LazyColumn) row -> MyRandom.product(row).name, prices, (LazyColumn) row -> MyRandom.product(row).code},
+						MyRandom::randomProductIndex);
+			}
+			default:
+				return null;
+		}
+	}
+
+	private static TemplateDictionary single(String name, String[] values) {
+		return new TemplateDictionary(name, new String[]{"value"}, new Object[]{values}, null);
+	}
+
+	private static TemplateDictionary single(String name, BinaryDictionary values) {
+		return new TemplateDictionary(name, values.size(), new String[]{"value"}, new Object[]{lazy(values)}, null);
+	}
+
+	private static LazyColumn lazy(BinaryDictionary values) {
+		return values::get;
+	}
+
+	/**
+	 * @param lines one string value per line, e.g. read from a file
+	 */
+	static TemplateDictionary of(String name, List<String> lines) {
+		return single(name, lines.toArray(new String[lines.size()]));
+	}
+
+	/**
+	 * @param rows JSON array of values (a single column named value) or of objects whose fields are the columns
+	 */
+	static TemplateDictionary of(String name, JsonNode rows) throws SQLException {
+		if (!rows.isArray() || rows.size() == 0) {
+			throw new IllegalArgumentException("Dictionary " + name + " must be a non empty array or a file name");
+		}
+
+		if (!rows.get(0).isObject()) {
+			return new TemplateDictionary(name, new String[]{"value"}, new Object[]{column(name, rows, null)}, null);
+		}
+
+		final List<String> names = new ArrayList<>();
+		for (Iterator<String> it = rows.get(0).fieldNames(); it.hasNext(); ) {
+			names.add(it.next());
+		}
+		final Object[] columns = new Object[names.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = column(name, rows, names.get(i));
+		}
+		return new TemplateDictionary(name, names.toArray(new String[names.size()]), columns, null);
+	}
+
+	private static Object column(String name, JsonNode rows, String field) throws SQLException {
+		final JsonNode[] cells = new JsonNode[rows.size()];
+		boolean strings = true;
+		boolean lists = true;
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = field == null ? rows.get(i) : rows.get(i).get(field);
+			if (cells[i] == null) {
+				throw new IllegalArgumentException("Dictionary " + name + ": row " + i + " has no " + field);
+			}
+			strings &= cells[i].isTextual();
+			lists &= cells[i].isArray() && cells[i].size() > 0;
+		}
+
+		if (strings) {
+			final String[] values = new String[cells.length];
+			for (int i = 0; i < cells.length; i++) {
+				values[i] = cells[i].asText();
+			}
+			return values;
+		}
+
+		if (lists) {
+			final String[][] values = new String[cells.length][];
+			for (int i = 0; i < cells.length; i++) {
+				values[i] = new String[cells[i].size()];
+				for (int j = 0; j < values[i].length; j++) {
+					values[i][j] = cells[i].get(j).asText();
+				}
+			}
+			return values;
+		}
+
+		final OracleJsonValue[] values = new OracleJsonValue[cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			values[i] = value(name, cells[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * @return the OSON value of a scalar JSON literal
+	 */
+	static OracleJsonValue value(String context, JsonNode node) throws SQLException {
+		if (node.isNumber()) {
+			return FACTORY.createValue(node.isIntegralNumber() && node.canConvertToLong() ? new NUMBER(node.asLong()) : new NUMBER(node.decimalValue()));
+		}
+		if (node.isBoolean()) {
+			return FACTORY.createBoolean(node.asBoolean());
+		}
+		if (node.isTextual()) {
+			return FACTORY.createString(node.asText());
+		}
+		if (node.isNull()) {
+			return FACTORY.createNull();
+		}
+		throw new IllegalArgumentException(context + ": only strings, numbers, booleans and null are supported, not " + node);
+	}
+}
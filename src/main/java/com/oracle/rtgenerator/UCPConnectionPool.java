@@ -0,0 +1,39 @@
+package com.oracle.rtgenerator;
+
+import oracle.jdbc.internal.OracleConnection;
+import oracle.ucp.jdbc.PoolDataSource;
+import oracle.ucp.jdbc.PoolDataSourceFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Oracle Universal Connection Pool of a fixed size, validating the connections on borrow.
+ */
+public class UCPConnectionPool extends ConnectionPool {
+	private final PoolDataSource pds;
+
+	public UCPConnectionPool(String url, String user, String password, int size) throws SQLException {
+		super(Backend.UCP, size);
+
+		pds = PoolDataSourceFactory.getPoolDataSource();
+		pds.setConnectionFactoryClassName("oracle.jdbc.pool.OracleDataSource");
+		pds.setURL(url);
+		pds.setUser(user);
+		pds.setPassword(password);
+		pds.setConnectionPoolName("JDBC_UCP_POOL-" + Thread.currentThread().getName());
+		pds.setInitialPoolSize(size);
+		pds.setMinPoolSize(size);
+		pds.setMaxPoolSize(size);
+		pds.setTimeoutCheckInterval(30);
+		pds.setInactiveConnectionTimeout(120);
+		pds.setValidateConnectionOnBorrow(true);
+		pds.setMaxStatements(Integer.parseInt(STATEMENT_CACHE_SIZE));
+		pds.setConnectionProperty(OracleConnection.CONNECTION_PROPERTY_DEFAULT_ROW_PREFETCH, ROW_PREFETCH);
+	}
+
+	@Override
+	protected Connection borrow() throws SQLException {
+		return pds.getConnection();
+	}
+}
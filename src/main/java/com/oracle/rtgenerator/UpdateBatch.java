@@ -0,0 +1,124 @@
+package com.oracle.rtgenerator;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Updates of one generator thread: keys sampled from the ring and, depending on the mode, the JSON merge patch or the
+ * replacement document of each key. Reused from one batch to the next.
+ */
+public class UpdateBatch {
+	private static final String[] STATUSES = {"approved", "shipped", "delivered", "invoiced", "cancelled"};
+	private static final String[] CARRIERS = {"UPS", "FedEx", "DHL", "USPS", "TNT"};
+
+	final UpdateWorkload.Mode mode;
+	final String[] keys;
+	final String[] patches;
+	final byte[][] documents;
+	int size;
+
+	private final UpdateWorkload workload;
+	private final MyRandom random;
+	private final PurchaseOrderBuilder builder;
+	private final double[] amount = new double[1];
+	// updates owed to the previous batches, fractional or without a key to update yet, at most a batch
+	private double owed;
+	private final StringBuilder patch = new StringBuilder(160);
+	private final boolean logicalTime = MyRandom.isDeterministic();
+	// deterministic mode: lastUpdate derived from the number of patches generated
+	private long patchSequence;
+	// yyyy-MM-ddT of the last patch, only formatted again when the day changes
+	private long lastUpdateDay = Long.MIN_VALUE;
+	private String lastUpdateDate;
+
+	public UpdateBatch(UpdateWorkload workload, int id, int capacity, boolean json) {
+		this.workload = workload;
+		this.mode = workload.getMode();
+		this.random = MyRandom.forStream(MyRandom.Stream.UPDATE, id);
+		this.keys = new String[capacity];
+		this.patches = mode == UpdateWorkload.Mode.MERGE ? new String[capacity] : null;
+		this.documents = mode == UpdateWorkload.Mode.REPLACE ? new byte[capacity][] : null;
+		this.builder = mode == UpdateWorkload.Mode.REPLACE ? new PurchaseOrderBuilder(json, random, 0L) : null;
+	}
+
+	/**
+	 * Prepares the updates owed for the given number of inserted documents. The ratio holds on average: the updates
+	 * owed (fractions, or keys not yet sampled because the ring was empty) carry over to the next batches, up to one
+	 * batch; beyond, they are dropped rather than replayed as a burst.
+	 *
+	 * @return false if there is nothing to update
+	 */
+	public boolean fill(int insertedDocuments) throws SQLException {
+		owed = Math.min(keys.length, owed + insertedDocuments * workload.getUpdatesPerInsert());
+		final int count = (int) owed;
+
+		size = 0;
+		for (int i = 0; i < count; i++) {
+			final String key = workload.getKeys().sample(random);
+			if (key == null) {
+				// still owed
+				continue;
+			}
+			keys[size] = key;
+			if (mode == UpdateWorkload.Mode.MERGE) {
+				patches[size] = lifecyclePatch();
+			}
+			else {
+				documents[size] = builder.generatePurchaseOrder(amount, 0);
+			}
+			size++;
+		}
+		owed -= size;
+		return size > 0;
+	}
+
+	/**
+	 * @return a merge patch moving the purchase order to a later stage of its lifecycle
+	 */
+	private String lifecyclePatch() {
+		final String status = STATUSES[random.nextInt(STATUSES.length)];
+		patch.setLength(0);
+		patch.append("{\"status\":\"").append(status).append("\",\"lastUpdate\":\"");
+		appendTimestamp(logicalTime ? PurchaseOrderBuilder.LOGICAL_EPOCH_MILLI + patchSequence++ : System.currentTimeMillis());
+		patch.append('"');
+		if ("shipped".equals(status) || "delivered".equals(status)) {
+			patch.append(",\"shipment\":{\"carrier\":\"").append(CARRIERS[random.nextInt(CARRIERS.length)])
+					.append("\",\"trackingNumber\":\"1Z").append(100_000_000 + random.nextInt(900_000_000)).append("\"}");
+		}
+		else if ("cancelled".equals(status)) {
+			patch.append(",\"specialInstructions\":null");
+		}
+		return patch.append('}').toString();
+	}
+
+	/**
+	 * Appends an ISO 8601 UTC timestamp with milliseconds, e.g. 2021-01-01T00:00:00.000Z.
+	 */
+	private void appendTimestamp(long epochMilli) {
+		final long epochDay = Math.floorDiv(epochMilli, 86_400_000L);
+		if (epochDay != lastUpdateDay) {
+			lastUpdateDate = LocalDate.ofEpochDay(epochDay) + "T";
+			lastUpdateDay = epochDay;
+		}
+		final int millis = (int) Math.floorMod(epochMilli, 86_400_000L);
+		patch.append(lastUpdateDate);
+		appendDigits(millis / 3_600_000, 2);
+		patch.append(':');
+		appendDigits(millis / 60_000 % 60, 2);
+		patch.append(':');
+		appendDigits(millis / 1000 % 60, 2);
+		patch.append('.');
+		appendDigits(millis % 1000, 3);
+		patch.append('Z');
+	}
+
+	private void appendDigits(int value, int length) {
+		int divisor = 1;
+		for (int i = 1; i < length; i++) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			patch.append((char) ('0' + value / divisor % 10));
+		}
+	}
+}
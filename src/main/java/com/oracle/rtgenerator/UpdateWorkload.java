@@ -0,0 +1,58 @@
+package com.oracle.rtgenerator;
+
+/**
+ * Order lifecycle changes applied to documents inserted earlier, at a fixed ratio of the inserted documents: after
+ * each committed insert batch, a generator updates a batch of keys sampled from the {@link KeyRing} and commits it.
+ */
+public class UpdateWorkload {
+
+	public enum Mode {
+		/**
+		 * JSON merge patch of a few fields (status, shipment...), partial update of the OSON document.
+		 */
+		MERGE,
+		/**
+		 * Whole document replaced by a freshly generated one.
+		 */
+		REPLACE
+	}
+
+	private final KeyRing keys;
+	private final double updatesPerInsert;
+	private final Mode mode;
+
+	public UpdateWorkload(KeyRing keys, double updatesPerInsert, Mode mode) {
+		this.keys = keys;
+		this.updatesPerInsert = updatesPerInsert;
+		this.mode = mode;
+	}
+
+	/**
+	 * @param ratio inserts:updates, e.g. 4:1 for one update every 4 inserted documents
+	 * @return updates per inserted document
+	 */
+	public static double parseRatio(String ratio) {
+		final int separator = ratio.indexOf(':');
+		if (separator == -1) {
+			throw new IllegalArgumentException("Update ratio must be <inserts>:<updates>");
+		}
+		final double inserts = Double.parseDouble(ratio.substring(0, separator));
+		final double updates = Double.parseDouble(ratio.substring(separator + 1));
+		if (inserts <= 0d || updates < 0d) {
+			throw new IllegalArgumentException("Update ratio must be <inserts>:<updates> with positive numbers");
+		}
+		return updates / inserts;
+	}
+
+	public KeyRing getKeys() {
+		return keys;
+	}
+
+	public double getUpdatesPerInsert() {
+		return updatesPerInsert;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+}
@@ -0,0 +1,65 @@
+package com.oracle.rtgenerator;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors running the insert sessions. Sessions mostly wait for the database so they can be far more numerous than
+ * the CPUs: with virtual threads (Java 21+) each session is a virtual thread, otherwise a platform thread of a fixed
+ * pool sized to the sessions count.
+ */
+public final class WorkerExecutors {
+	private WorkerExecutors() {
+	}
+
+	/**
+	 * @return true if this JVM provides virtual threads (the project still targets Java 11)
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		return virtualThreadPerTaskExecutor() != null;
+	}
+
+	/**
+	 * @param sessions       number of sessions submitted to the executor
+	 * @param virtualThreads one virtual thread per session if supported by the JVM, the fallback to platform threads
+	 *                       being logged
+	 */
+	public static ExecutorService newSessionExecutor(int sessions, boolean virtualThreads) {
+		if (virtualThreads) {
+			final Method factory = virtualThreadPerTaskExecutor();
+			if (factory != null) {
+				try {
+					return (ExecutorService) factory.invoke(null);
+				} catch (ReflectiveOperationException e) {
+					System.out.println("Virtual threads unavailable (" + e.getCause() + "), falling back to " + sessions + " platform threads");
+				}
+			}
+			else {
+				System.out.println("Virtual threads need Java 21+ (running " + System.getProperty("java.version") + "), falling back to " + sessions + " platform threads");
+			}
+		}
+
+		return Executors.newFixedThreadPool(sessions, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, "Generator-" + count.getAndIncrement());
+				// never prevents the JVM from exiting, the loader waits for the sessions itself
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	private static Method virtualThreadPerTaskExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.oracle.rtgenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import oracle.sql.json.OracleJsonFactory;
+import oracle.sql.json.OracleJsonGenerator;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DocumentTemplateTest {
+	// documents and amounts of the hand-written PurchaseOrderBuilder the built-in template replaced, seed 7, session 0
+	private static final String HAND_WRITTEN_DOCUMENTS = "purchase_orders_seed7.txt";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@After
+	public void resetSeed() {
+		MyRandom.SEED = null;
+	}
+
+	@Test
+	public void purchaseOrderMatchesTheHandWrittenBuilder() throws Exception {
+		MyRandom.SEED = 7L;
+		final DocumentTemplate template = DocumentTemplate.purchaseOrder();
+		final DocumentTemplate.State state = template.newState(MyRandom.forStream(MyRandom.Stream.SESSION, 0), 0L);
+		final OracleJsonFactory factory = new OracleJsonFactory();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		final InputStream in = getClass().getClassLoader().getResourceAsStream(HAND_WRITTEN_DOCUMENTS);
+		assertNotNull(HAND_WRITTEN_DOCUMENTS, in);
+		try (BufferedReader expected = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			int documents = 0;
+			for (String line; (line = expected.readLine()) != null; documents++) {
+				final int separator = line.lastIndexOf('\t');
+
+				out.reset();
+				final OracleJsonGenerator gen = factory.createJsonTextGenerator(out);
+				final double amount = template.write(state, gen, false);
+				gen.close();
+
+				// the references now end with -node.stream.index.sequence
+				final String suffix = "-0.0.0." + documents + "\"";
+				final String document = out.toString(StandardCharsets.UTF_8.name());
+				assertTrue(document, document.contains(suffix));
+				assertEquals("document " + documents, line.substring(0, separator), document.replaceFirst(suffix, "\""));
+				assertEquals("amount of document " + documents, Double.parseDouble(line.substring(separator + 1)), amount, 0d);
+			}
+			assertEquals(200, documents);
+		}
+	}
+
+	@Test
+	public void rejectsUnknownGeneratorFields() throws Exception {
+		assertError("{\"a\": {\"$int\": [1, 5], \"max\": 3}}", "$.a: $int does not take \"max\"");
+		assertError("{\"a\": {\"$pick\": \"cities\", \"$int\": [1, 5]}}", "$.a: $pick does not take \"$int\"");
+		assertError("{\"a\": {\"$when\": {\"$boolean\": true}, \"is\": true, \"of\": 1}}", "$.a: $when does not take \"of\"");
+		assertError("{\"a\": {\"$array\": 2, \"of\": 1, \"as\": \"b\"}}", "$.a: $array does not take \"as\"");
+		assertError("{\"a\": {\"$concat\": [{\"$uniqueSuffix\": true, \"digits\": 4}]}}", "$.a.$concat[0]: $uniqueSuffix does not take \"digits\"");
+	}
+
+	@Test
+	public void rejectsInvalidGenerators() throws Exception {
+		assertError("[1]", "must be a JSON object");
+		assertError("{\"a\": {\"$int\": [5, 1]}}", "$.a: $int needs [min, max] with min <= max");
+		assertError("{\"a\": {\"$double\": 1}}", "$.a: $double needs [min, max]");
+		assertError("{\"a\": {\"$array\": 2}}", "$.a: $array needs the element template \"of\"");
+		assertError("{\"a\": {\"$item\": \"cities\"}}", "$.a: $item outside of an $array");
+		assertError("{\"a\": {\"$when\": {\"$double\": [0, 1]}, \"is\": 1}}", "$.a: $when needs an integer or boolean generator");
+	}
+
+	private static void assertError(String template, String message) throws Exception {
+		try {
+			DocumentTemplate.compile("test", MAPPER.readTree(template), null);
+			fail("compiled " + template);
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.oracle.rtgenerator;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JDBCDocumentSinkTest {
+
+	@Test
+	public void keysAreVersion4UUIDs() {
+		final SplittableRandom random = new SplittableRandom(42L);
+		final char[] key = new char[32];
+
+		for (int i = 0; i < 10_000; i++) {
+			JDBCDocumentSink.formatUUID(random.nextLong(), random.nextLong(), key);
+			final String hex = new String(key);
+			assertTrue(hex, hex.matches("[0-9A-F]{32}"));
+
+			final UUID uuid = UUID.fromString(hex.substring(0, 8) + '-' + hex.substring(8, 12) + '-' + hex.substring(12, 16) + '-' +
+					hex.substring(16, 20) + '-' + hex.substring(20));
+			assertEquals(4, uuid.version());
+			assertEquals(2, uuid.variant());
+		}
+	}
+
+	@Test
+	public void keysKeepTheRandomBits() {
+		final char[] key = new char[32];
+		JDBCDocumentSink.formatUUID(0x0123456789ABCDEFL, 0xFEDCBA9876543210L, key);
+		assertEquals("0123456789AB4DEFBEDCBA9876543210", new String(key));
+	}
+}
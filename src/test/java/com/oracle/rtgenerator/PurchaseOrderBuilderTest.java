@@ -0,0 +1,66 @@
+package com.oracle.rtgenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PurchaseOrderBuilderTest {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@After
+	public void resetSeed() {
+		MyRandom.SEED = null;
+		MyRandom.NODE_ID = 0;
+		MyRandom.NODE_COUNT = 1;
+	}
+
+	@Test
+	public void sameSeedSameDocuments() throws Exception {
+		MyRandom.SEED = 7L;
+		final byte[][] first = generate(MyRandom.Stream.SESSION, 0, 1_000);
+		final byte[][] second = generate(MyRandom.Stream.SESSION, 0, 1_000);
+		for (int i = 0; i < first.length; i++) {
+			assertArrayEquals("document " + i, first[i], second[i]);
+		}
+	}
+
+	@Test
+	public void referencesDoNotOverlapAcrossNodesAndStreams() throws Exception {
+		MyRandom.SEED = 7L;
+		MyRandom.NODE_COUNT = 2;
+		final Set<String> references = new HashSet<>();
+		int documents = 0;
+		for (int node = 0; node < 2; node++) {
+			MyRandom.NODE_ID = node;
+			for (MyRandom.Stream stream : Arrays.asList(MyRandom.Stream.SESSION, MyRandom.Stream.PRODUCER)) {
+				for (int index = 0; index < 2; index++) {
+					for (byte[] document : generate(stream, index, 500)) {
+						final String reference = MAPPER.readTree(document).get("reference").asText();
+						assertTrue(reference, reference.endsWith("-" + node + "." + stream.ordinal() + "." + index + "." + documents % 500));
+						references.add(reference);
+						documents++;
+					}
+				}
+			}
+		}
+		assertEquals(documents, references.size());
+	}
+
+	private static byte[][] generate(MyRandom.Stream stream, int index, int count) throws Exception {
+		final PurchaseOrderBuilder builder = new PurchaseOrderBuilder(true, MyRandom.forStream(stream, index), 0L);
+		final double[] amounts = new double[1];
+		final byte[][] documents = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			documents[i] = builder.generatePurchaseOrder(amounts, 0);
+		}
+		return documents;
+	}
+}
@@ -0,0 +1,68 @@
+package com.oracle.rtgenerator;
+
+import oracle.sql.json.OracleJsonFactory;
+import oracle.sql.json.OracleJsonObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PurchaseOrderTemplateTest {
+	private static final OracleJsonFactory FACTORY = new OracleJsonFactory();
+
+	@After
+	public void resetSeed() {
+		MyRandom.SEED = null;
+	}
+
+	@Test
+	public void patchedDocumentsDecodeWithThePatchedValues() throws Exception {
+		MyRandom.SEED = 7L;
+		final PurchaseOrderTemplate template = new PurchaseOrderBuilder(false, MyRandom.forStream(MyRandom.Stream.POOL, 0), 0L).generatePurchaseOrderTemplate();
+
+		final OracleJsonObject first = decode(template.patchedCopy(42L, 1_700_000_000_123L, 456_789));
+		assertPatched(first, "-20231114-0000000000000042", Instant.parse("2023-11-14T22:13:20.123456789Z"));
+
+		// another copy of the same template, across a year boundary
+		final OracleJsonObject second = decode(template.patchedCopy(1_234_567_890_123_456L, 1_704_067_199_999L, 999_999));
+		assertPatched(second, "-20231231-1234567890123456", Instant.parse("2023-12-31T23:59:59.999999999Z"));
+
+		assertNotEquals(reference(first), reference(second));
+		assertNotEquals(requestedAt(first), requestedAt(second));
+		// the rest of the document is untouched
+		assertEquals(first.get("items"), second.get("items"));
+	}
+
+	@Test
+	public void patchedCopyLeavesTheTemplateUntouched() throws Exception {
+		MyRandom.SEED = 7L;
+		final PurchaseOrderTemplate template = new PurchaseOrderBuilder(false, MyRandom.forStream(MyRandom.Stream.POOL, 0), 0L).generatePurchaseOrderTemplate();
+		final byte[] before = template.oson.clone();
+
+		template.patchedCopy(1L, 1_700_000_000_000L, 0);
+		assertEquals(ByteBuffer.wrap(before), ByteBuffer.wrap(template.oson));
+		assertPatched(decode(template.oson), "-" + PurchaseOrderTemplate.PLACEHOLDER_DATE + "-" + PurchaseOrderTemplate.PLACEHOLDER_SEQUENCE, PurchaseOrderTemplate.PLACEHOLDER_INSTANT);
+	}
+
+	private static void assertPatched(OracleJsonObject document, String referenceSuffix, Instant requestedAt) {
+		assertTrue(reference(document), reference(document).endsWith(referenceSuffix));
+		assertEquals(requestedAt, requestedAt(document));
+	}
+
+	private static OracleJsonObject decode(byte[] oson) {
+		return FACTORY.createJsonBinaryValue(ByteBuffer.wrap(oson)).asJsonObject();
+	}
+
+	private static String reference(OracleJsonObject document) {
+		return document.getString("reference");
+	}
+
+	private static Instant requestedAt(OracleJsonObject document) {
+		return document.get("requestedAt").asJsonTimestampTZ().getOffsetDateTime().toInstant();
+	}
+}